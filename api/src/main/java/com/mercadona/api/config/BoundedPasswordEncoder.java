@@ -0,0 +1,194 @@
+package com.mercadona.api.config;
+
+import com.mercadona.api.exceptions.HashingCapacityExceededException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static com.mercadona.api.constants.ApiConstants.PASSWORD_HASH_QUEUE_METRIC;
+import static com.mercadona.api.constants.ApiConstants.PASSWORD_HASH_REJECTED_METRIC;
+import static com.mercadona.api.constants.ApiConstants.PASSWORD_HASH_TIMER;
+
+/**
+ * PasswordEncoder that runs every hash of the delegate encoder on a dedicated, CPU-sized pool
+ * with a bounded queue, so password hashing cannot starve the request threads of other endpoints.
+ * When the queue is full the call fails fast with {@link HashingCapacityExceededException}.
+ */
+public class BoundedPasswordEncoder implements PasswordEncoder, AutoCloseable {
+
+    private static final long BULK_RETRY_DELAY_MILLIS = 10;
+
+    private final PasswordEncoder delegate;
+    private final ThreadPoolExecutor executor;
+    private final Semaphore bulkPermits;
+    private final Duration retryAfter;
+    private final Timer encodeTimer;
+    private final Timer matchesTimer;
+    private final Counter rejectedCounter;
+
+    /**
+     * Creates the encoder and its hashing pool, and registers the pool metrics.
+     *
+     * @param delegate      the encoder that actually hashes the passwords
+     * @param threads       the number of hashing threads
+     * @param queueCapacity the maximum number of hashes waiting for a thread
+     * @param retryAfter    the delay suggested to clients when the queue is full
+     * @param meterRegistry the registry where the metrics are published
+     */
+    public BoundedPasswordEncoder(PasswordEncoder delegate, int threads, int queueCapacity, Duration retryAfter,
+                                  MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("password-hash-"),
+                new ThreadPoolExecutor.AbortPolicy());
+        // Bulk hashing never takes more than half of the queue, the rest is kept for interactive requests
+        this.bulkPermits = new Semaphore(Math.max(1, queueCapacity / 2));
+        this.retryAfter = retryAfter;
+
+        this.encodeTimer = Timer.builder(PASSWORD_HASH_TIMER)
+                .tag("operation", "encode")
+                .register(meterRegistry);
+        this.matchesTimer = Timer.builder(PASSWORD_HASH_TIMER)
+                .tag("operation", "matches")
+                .register(meterRegistry);
+        this.rejectedCounter = Counter.builder(PASSWORD_HASH_REJECTED_METRIC)
+                .register(meterRegistry);
+        Gauge.builder(PASSWORD_HASH_QUEUE_METRIC, executor, pool -> pool.getQueue().size())
+                .register(meterRegistry);
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return await(submit(() -> encodeTimer.record(() -> delegate.encode(rawPassword))));
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        return await(submit(() -> matchesTimer.record(() -> delegate.matches(rawPassword, encodedPassword))));
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    /**
+     * Hashes a batch of passwords on the hashing pool, in parallel.
+     * Instead of failing when the queue is full, the caller waits for free slots, and it never
+     * holds more than half of the queue so interactive logins can still be queued.
+     *
+     * @param rawPasswords the passwords to hash
+     * @return the hashes, in the same order as the passwords
+     */
+    public List<String> encodeAll(List<? extends CharSequence> rawPasswords) {
+
+        List<Future<String>> futures = new ArrayList<>(rawPasswords.size());
+        try {
+            for (CharSequence rawPassword : rawPasswords) {
+                futures.add(submitBulk(() -> encodeTimer.record(() -> delegate.encode(rawPassword))));
+            }
+        } catch (InterruptedException e) {
+            futures.forEach(future -> future.cancel(false));
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the hashing pool", e);
+        }
+
+        List<String> hashes = new ArrayList<>(futures.size());
+        futures.forEach(future -> hashes.add(await(future)));
+
+        return hashes;
+    }
+
+    /**
+     * Stops the hashing pool, letting the queued hashes finish.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+    }
+
+    // Helper Methods
+
+    /**
+     * Queues a hashing task, failing fast if the queue is full.
+     *
+     * @param task the hashing task
+     * @param <T>  the result type of the task
+     * @return the future result of the task
+     */
+    private <T> Future<T> submit(Callable<T> task) {
+
+        try {
+            return executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            rejectedCounter.increment();
+            throw new HashingCapacityExceededException(retryAfter);
+        }
+    }
+
+    /**
+     * Queues a hashing task of a bulk operation, waiting until the bulk share of the queue has room.
+     *
+     * @param task the hashing task
+     * @param <T>  the result type of the task
+     * @return the future result of the task
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private <T> Future<T> submitBulk(Callable<T> task) throws InterruptedException {
+
+        while (true) {
+            bulkPermits.acquire();
+            try {
+                return executor.submit(() -> {
+                    try {
+                        return task.call();
+                    } finally {
+                        bulkPermits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // The queue was filled by interactive requests: back off instead of failing the whole batch
+                bulkPermits.release();
+                TimeUnit.MILLISECONDS.sleep(BULK_RETRY_DELAY_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Waits for the result of a hashing task, rethrowing its unchecked exceptions as they are.
+     *
+     * @param future the future result of the task
+     * @param <T>    the result type of the task
+     * @return the result of the task
+     */
+    private static <T> T await(Future<T> future) {
+
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a password hash", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
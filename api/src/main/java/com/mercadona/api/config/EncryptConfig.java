@@ -1,5 +1,6 @@
 package com.mercadona.api.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
@@ -10,7 +11,8 @@ import static com.mercadona.api.constants.ApiConstants.STRENGTH_PASS_ENCODER;
 public class EncryptConfig {
 
     @Bean
-    public BCryptPasswordEncoder passwordEncoder () {
-        return new BCryptPasswordEncoder(STRENGTH_PASS_ENCODER);
+    public BoundedPasswordEncoder passwordEncoder (PasswordHashingConfig hashingConfig, MeterRegistry meterRegistry) {
+        return new BoundedPasswordEncoder(new BCryptPasswordEncoder(STRENGTH_PASS_ENCODER), hashingConfig.getThreads(),
+                hashingConfig.getQueueCapacity(), hashingConfig.getRetryAfter(), meterRegistry);
     }
 }
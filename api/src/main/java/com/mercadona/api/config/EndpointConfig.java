@@ -11,7 +11,13 @@ public class EndpointConfig {
     @Value("${endpoints.login}")
     private String loginEndpoint;
 
+    @Value("${endpoints.refresh}")
+    private String refreshEndpoint;
+
     @Value("${endpoints.register}")
     private String registerEndpoint;
 
+    @Value("${server.error.path:/error}")
+    private String errorEndpoint;
+
 }
@@ -0,0 +1,103 @@
+package com.mercadona.api.config;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+import com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.persistence.EntityManagerFactory;
+import lombok.Getter;
+import org.hibernate.SessionFactory;
+import org.hibernate.cache.jcache.ConfigSettings;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.cache.CacheManager;
+import java.time.Duration;
+import java.util.OptionalLong;
+
+import static com.mercadona.api.constants.ApiConstants.CACHE_HIT_RATIO_METRIC;
+import static com.mercadona.api.constants.ApiConstants.USER_CACHE_REGION;
+import static com.mercadona.api.constants.ApiConstants.USER_NATURAL_ID_CACHE_REGION;
+
+/**
+ * Hibernate second-level cache of {@link com.mercadona.api.models.UserModel}: its entity region, by ID, and its
+ * natural-id region, by login name. Both are local Caffeine caches, through JCache, bounded in size and TTL.
+ * Hit and miss counts come from the Hibernate statistics ("hibernate.second.level.cache.*" and
+ * "hibernate.cache.natural.id.*"), and the hit ratio of each region is published as "cache.hit.ratio".
+ */
+@Configuration
+@Getter
+public class EntityCacheConfig {
+
+    @Value("${users.entity-cache.enabled}")
+    private boolean enabled;
+
+    @Value("${users.entity-cache.maximum-size}")
+    private long maximumSize;
+
+    @Value("${users.entity-cache.ttl}")
+    private Duration ttl;
+
+    @Bean
+    public CacheManager entityCacheManager() {
+        CacheManager cacheManager = new CaffeineCachingProvider().getCacheManager();
+        if (enabled) {
+            for (String region : new String[]{USER_CACHE_REGION, USER_NATURAL_ID_CACHE_REGION}) {
+                cacheManager.createCache(region, new CaffeineConfiguration<>()
+                        .setMaximumSize(OptionalLong.of(maximumSize))
+                        .setExpireAfterWrite(OptionalLong.of(ttl.toNanos())));
+            }
+        }
+        return cacheManager;
+    }
+
+    /**
+     * Every region must be created above: a region Hibernate asks for and that does not exist fails the startup,
+     * rather than getting an unbounded cache. Statistics are enabled with the cache, to publish its hit counts.
+     */
+    @Bean
+    public HibernatePropertiesCustomizer entityCacheCustomizer(CacheManager entityCacheManager) {
+        return properties -> {
+            properties.put(AvailableSettings.USE_SECOND_LEVEL_CACHE, enabled);
+            if (enabled) {
+                properties.put(AvailableSettings.CACHE_REGION_FACTORY, "jcache");
+                properties.put(ConfigSettings.CACHE_MANAGER, entityCacheManager);
+                properties.put(ConfigSettings.MISSING_CACHE_STRATEGY, "fail");
+                properties.put(AvailableSettings.GENERATE_STATISTICS, true);
+            }
+        };
+    }
+
+    @Bean
+    public MeterBinder entityCacheMetrics(EntityManagerFactory entityManagerFactory) {
+        return meterRegistry -> {
+            if (!enabled) {
+                return;
+            }
+
+            Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+            for (String region : new String[]{USER_CACHE_REGION, USER_NATURAL_ID_CACHE_REGION}) {
+                Gauge.builder(CACHE_HIT_RATIO_METRIC, statistics, stats -> hitRatio(stats, region))
+                        .tag("cache", region)
+                        .register(meterRegistry);
+            }
+        };
+    }
+
+    // Helper Methods
+
+    private static double hitRatio(Statistics statistics, String region) {
+        CacheRegionStatistics regionStatistics = statistics.getDomainDataRegionStatistics(region);
+        if (regionStatistics == null) {
+            return 0;
+        }
+
+        long requests = regionStatistics.getHitCount() + regionStatistics.getMissCount();
+        return requests == 0 ? 0 : (double) regionStatistics.getHitCount() / requests;
+    }
+}
@@ -0,0 +1,14 @@
+package com.mercadona.api.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@Getter
+public class ExportConfig {
+
+    @Value("${users.export.fetch-size}")
+    private int fetchSize;
+
+}
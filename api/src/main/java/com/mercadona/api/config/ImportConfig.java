@@ -0,0 +1,14 @@
+package com.mercadona.api.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@Getter
+public class ImportConfig {
+
+    @Value("${users.import.batch-size}")
+    private int batchSize;
+
+}
@@ -0,0 +1,49 @@
+package com.mercadona.api.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@Getter
+public class JwtConfig {
+
+    @Value("${jwt.cache.enabled}")
+    private boolean cacheEnabled;
+
+    @Value("${jwt.cache.maximum-size}")
+    private long cacheMaximumSize;
+
+    @Value("${jwt.access-token.ttl}")
+    private Duration accessTokenTtl;
+
+    @Value("${jwt.refresh-token.ttl}")
+    private Duration refreshTokenTtl;
+
+    @Value("${jwt.claims-only.enabled}")
+    private boolean claimsOnly;
+
+    @Value("${jwt.claims-only.refresh-interval}")
+    private Duration claimsOnlyRefreshInterval;
+
+    @Value("${jwt.revocation.tick}")
+    private Duration revocationTick;
+
+    @Value("${jwt.revocation.journal}")
+    private String revocationJournal;
+
+    @Value("${jwt.keys.file}")
+    private String keysFile;
+
+    @Value("${jwt.keys.rotation}")
+    private Duration keysRotation;
+
+    @Value("${jwt.keys.overlap}")
+    private Duration keysOverlap;
+
+    @Value("${jwt.keys.reload-interval}")
+    private Duration keysReloadInterval;
+
+}
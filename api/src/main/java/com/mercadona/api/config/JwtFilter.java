@@ -1,20 +1,29 @@
 package com.mercadona.api.config;
 
+import com.mercadona.api.models.UserPrincipal;
+import com.mercadona.api.models.VerifiedToken;
 import com.mercadona.api.services.JWTService;
 import com.mercadona.api.services.MyUserDetailsService;
+import com.mercadona.api.services.SecurityVersionCache;
+import com.mercadona.api.services.TokenRevocationList;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
-import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.concurrent.TimeUnit;
 
+import static com.mercadona.api.constants.ApiConstants.AUTH_FILTER_TIMER;
 import static com.mercadona.api.constants.ApiConstants.AUTH_HEADER_IDX;
 import static com.mercadona.api.constants.ApiConstants.BEARER_TOKEN_AUTH_TYPE;
 import static org.springframework.http.HttpHeaders.AUTHORIZATION;
@@ -22,22 +31,46 @@ import static org.springframework.http.HttpHeaders.AUTHORIZATION;
 /**
  * JwtFilter is a custom security filter that intercepts HTTP requests to extract
  * and validate JWT tokens for authentication. The filter is executed once per request.
+ * The time spent authenticating the request (not the rest of the chain) is recorded in the "auth.filter"
+ * timer, tagged with the outcome.
+ * In claims-only mode, tokens carrying user claims are authenticated from the claims and the in-memory
+ * security versions, without loading the user; other tokens still go through the user details service.
+ * Revoked tokens are rejected before either path, with an allocation-free in-memory lookup.
  */
 @Component
 public class JwtFilter extends OncePerRequestFilter {
 
     private final JWTService jwtService;
     private final MyUserDetailsService userDetailsService;
+    private final SecurityVersionCache securityVersions;
+    private final TokenRevocationList revocations;
+    private final boolean claimsOnly;
+    private final Timer authenticatedTimer;
+    private final Timer rejectedTimer;
+    private final Timer failedTimer;
 
     /**
      * Constructor-based dependency injection for services.
      *
      * @param jwtService         the service for handling JWT operations
      * @param userDetailsService the service for loading user details
+     * @param securityVersions   the recently changed security versions, checked in claims-only mode
+     * @param revocations        the revoked tokens
+     * @param jwtConfig          the JWT configuration
+     * @param meterRegistry      the registry where the filter timer is published
      */
-    public JwtFilter(JWTService jwtService, MyUserDetailsService userDetailsService) {
+    public JwtFilter(JWTService jwtService, MyUserDetailsService userDetailsService,
+                     SecurityVersionCache securityVersions, TokenRevocationList revocations, JwtConfig jwtConfig,
+                     MeterRegistry meterRegistry) {
         this.jwtService = jwtService;
         this.userDetailsService = userDetailsService;
+        this.securityVersions = securityVersions;
+        this.revocations = revocations;
+        this.claimsOnly = jwtConfig.isClaimsOnly();
+        // Timers are resolved once, so the request path never looks them up in the registry
+        this.authenticatedTimer = outcomeTimer(meterRegistry, "authenticated");
+        this.rejectedTimer = outcomeTimer(meterRegistry, "rejected");
+        this.failedTimer = outcomeTimer(meterRegistry, "failed");
     }
 
     /**
@@ -54,31 +87,75 @@ public class JwtFilter extends OncePerRequestFilter {
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
         // Extract the Authorization header
         String authHeader = request.getHeader(AUTHORIZATION);
-        String token = null;
-        String username = null;
 
-        // Check if the Authorization header starts with "Bearer "
-        if (authHeader != null && authHeader.startsWith(BEARER_TOKEN_AUTH_TYPE)) {
-            token = authHeader.substring(AUTH_HEADER_IDX); // Extract the JWT token
-            username = jwtService.extractUserName(token); // Extract the username from the token
-        }
-
-        // Authenticate the user if the username is valid and no existing authentication is present
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-            UserDetails userDetails = userDetailsService.loadUserByUsername(username);
-
-            // Validate the token and set the security context
-            if (jwtService.validateToken(token, userDetails)) {
-                UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
-                        userDetails, null, userDetails.getAuthorities());
-                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+        // Only parse the token if it is a "Bearer " token and no existing authentication is present
+        if (authHeader != null && authHeader.startsWith(BEARER_TOKEN_AUTH_TYPE)
+                && SecurityContextHolder.getContext().getAuthentication() == null) {
+            long start = System.nanoTime();
+            Timer outcome = failedTimer;
+            try {
+                // Parse and verify the JWT token once
+                VerifiedToken token = jwtService.verify(authHeader.substring(AUTH_HEADER_IDX));
+                Authentication authentication = null;
+                if (!revocations.isRevoked(token.jti())) {
+                    authentication = claimsOnly && token.hasUserClaims()
+                            ? authenticateFromClaims(token)
+                            : authenticateFromUser(token);
+                }
 
-                // Set the authentication in the security context
-                SecurityContextHolder.getContext().setAuthentication(authToken);
+                // Set the security context
+                outcome = rejectedTimer;
+                if (authentication != null) {
+                    SecurityContextHolder.getContext().setAuthentication(authentication);
+                    outcome = authenticatedTimer;
+                }
+            } finally {
+                outcome.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
             }
         }
 
         // Continue with the filter chain
         filterChain.doFilter(request, response);
     }
+
+    /**
+     * Authenticates the token from its claims, without any I/O.
+     *
+     * @param token the verified token
+     * @return the authentication, or null if the security version of the user changed since the token was issued
+     */
+    private Authentication authenticateFromClaims(VerifiedToken token) {
+
+        if (!securityVersions.isCurrent(token.idUser(), token.securityVersion(), token.issuedAt())) {
+            return null;
+        }
+
+        UserPrincipal principal = new UserPrincipal(token.idUser(), token.subject(), null, token.securityVersion());
+
+        // Web details (remote address, session id) are not used by the stateless API, so they are not built
+        return UsernamePasswordAuthenticationToken.authenticated(principal, null,
+                AuthorityUtils.createAuthorityList(token.roles()));
+    }
+
+    /**
+     * Authenticates the token against the principal loaded by the user details service.
+     *
+     * @param token the verified token
+     * @return the authentication, or null if the token does not match the user
+     */
+    private Authentication authenticateFromUser(VerifiedToken token) {
+
+        UserDetails userDetails = userDetailsService.loadPrincipalByUsername(token.subject());
+        if (!jwtService.validateToken(token, userDetails)) {
+            return null;
+        }
+
+        return UsernamePasswordAuthenticationToken.authenticated(userDetails, null, userDetails.getAuthorities());
+    }
+
+    private static Timer outcomeTimer(MeterRegistry meterRegistry, String outcome) {
+        return Timer.builder(AUTH_FILTER_TIMER)
+                .tag("outcome", outcome)
+                .register(meterRegistry);
+    }
 }
@@ -0,0 +1,31 @@
+package com.mercadona.api.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@Getter
+public class LoginFilterConfig {
+
+    @Value("${users.login-filter.enabled}")
+    private boolean enabled;
+
+    @Value("${users.login-filter.expected-users}")
+    private long expectedUsers;
+
+    @Value("${users.login-filter.false-positive-rate}")
+    private double falsePositiveRate;
+
+    @Value("${users.login-filter.rebuild-ratio}")
+    private double rebuildRatio;
+
+    @Value("${users.login-filter.refresh-interval}")
+    private Duration refreshInterval;
+
+    @Value("${users.login-filter.miss-checks-per-second}")
+    private int missChecksPerSecond;
+
+}
@@ -0,0 +1,32 @@
+package com.mercadona.api.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@Getter
+public class LoginThrottleConfig {
+
+    @Value("${auth.throttle.enabled}")
+    private boolean enabled;
+
+    @Value("${auth.throttle.ip.permits-per-minute}")
+    private int ipPermitsPerMinute;
+
+    @Value("${auth.throttle.ip.burst}")
+    private int ipBurst;
+
+    @Value("${auth.throttle.user.permits-per-minute}")
+    private int userPermitsPerMinute;
+
+    @Value("${auth.throttle.user.burst}")
+    private int userBurst;
+
+    @Value("${auth.throttle.max-keys}")
+    private long maxKeys;
+
+    @Value("${auth.throttle.max-body-size}")
+    private int maxBodySize;
+
+}
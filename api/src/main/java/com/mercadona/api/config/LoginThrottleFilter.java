@@ -0,0 +1,238 @@
+package com.mercadona.api.config;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Ticker;
+import com.mercadona.api.models.UserModel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static com.mercadona.api.constants.ApiConstants.ERROR_TOO_MANY_LOGINS;
+import static com.mercadona.api.constants.ApiConstants.LOGIN_THROTTLE_KEYS_METRIC;
+import static com.mercadona.api.constants.ApiConstants.LOGIN_THROTTLE_REJECTED_METRIC;
+import static org.springframework.http.HttpHeaders.RETRY_AFTER;
+
+/**
+ * Throttles the login endpoint with token buckets keyed by client IP and by login name, before the
+ * request reaches the password hashing or the database. Over-limit requests get a 429 response with
+ * a Retry-After header, and are counted in "auth.throttle.rejected", tagged with the key that hit its limit.
+ * The client IP is the remote address; behind a proxy, server.forward-headers-strategy must be set.
+ * While a limiter tracks auth.throttle.max-keys keys, requests with a new key are rejected as well.
+ */
+@Component
+public class LoginThrottleFilter extends OncePerRequestFilter {
+
+    private final EndpointConfig endpointConfig;
+    private final LoginThrottleConfig loginThrottleConfig;
+    private final ObjectMapper objectMapper;
+    private final RateLimiter ipLimiter;
+    private final RateLimiter userLimiter;
+    private final Counter ipRejectedCounter;
+    private final Counter userRejectedCounter;
+
+    /**
+     * Constructor-based dependency injection.
+     *
+     * @param endpointConfig      the endpoint configuration, with the login path
+     * @param loginThrottleConfig the throttling limits
+     * @param objectMapper        the application object mapper, used to read the login name
+     * @param meterRegistry       the registry where the rejection counters are published
+     */
+    @Autowired
+    public LoginThrottleFilter(EndpointConfig endpointConfig, LoginThrottleConfig loginThrottleConfig,
+                               ObjectMapper objectMapper, MeterRegistry meterRegistry) {
+        this(endpointConfig, loginThrottleConfig, objectMapper, meterRegistry, Ticker.systemTicker());
+    }
+
+    /**
+     * Creates the filter with the given time source for its limiters.
+     *
+     * @param endpointConfig      the endpoint configuration, with the login path
+     * @param loginThrottleConfig the throttling limits
+     * @param objectMapper        the application object mapper, used to read the login name
+     * @param meterRegistry       the registry where the rejection counters are published
+     * @param ticker              the source of the current time, in nanoseconds
+     */
+    public LoginThrottleFilter(EndpointConfig endpointConfig, LoginThrottleConfig loginThrottleConfig,
+                               ObjectMapper objectMapper, MeterRegistry meterRegistry, Ticker ticker) {
+        this.endpointConfig = endpointConfig;
+        this.loginThrottleConfig = loginThrottleConfig;
+        this.objectMapper = objectMapper;
+        this.ipLimiter = new RateLimiter(loginThrottleConfig.getIpPermitsPerMinute(), loginThrottleConfig.getIpBurst(),
+                loginThrottleConfig.getMaxKeys(), ticker);
+        this.userLimiter = new RateLimiter(loginThrottleConfig.getUserPermitsPerMinute(),
+                loginThrottleConfig.getUserBurst(), loginThrottleConfig.getMaxKeys(), ticker);
+
+        this.ipRejectedCounter = Counter.builder(LOGIN_THROTTLE_REJECTED_METRIC).tag("key", "ip").register(meterRegistry);
+        this.userRejectedCounter = Counter.builder(LOGIN_THROTTLE_REJECTED_METRIC).tag("key", "user").register(meterRegistry);
+        Gauge.builder(LOGIN_THROTTLE_KEYS_METRIC, ipLimiter, RateLimiter::keys).tag("key", "ip").register(meterRegistry);
+        Gauge.builder(LOGIN_THROTTLE_KEYS_METRIC, userLimiter, RateLimiter::keys).tag("key", "user").register(meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !loginThrottleConfig.isEnabled()
+                || !HttpMethod.POST.matches(request.getMethod())
+                || !endpointConfig.getLoginEndpoint().equals(request.getServletPath());
+    }
+
+    /**
+     * Takes a permit for the client IP, then for the login name of the request body, and rejects
+     * the request if either of them is over its limit.
+     *
+     * @param request     the login request
+     * @param response    the HTTP response
+     * @param filterChain the chain of filters
+     * @throws ServletException in case of Servlet-related errors
+     * @throws IOException      in case of I/O errors
+     */
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        long waitNanos = ipLimiter.tryAcquire(request.getRemoteAddr());
+        if (waitNanos > 0) {
+            ipRejectedCounter.increment();
+            reject(response, waitNanos);
+            return;
+        }
+
+        // The body is buffered to read the login name, and replayed to the controller
+        byte[] body = request.getInputStream().readNBytes(loginThrottleConfig.getMaxBodySize() + 1);
+        if (body.length > loginThrottleConfig.getMaxBodySize()) {
+            response.sendError(HttpStatus.PAYLOAD_TOO_LARGE.value());
+            return;
+        }
+
+        String loginName = readLoginName(body);
+        if (loginName != null) {
+            waitNanos = userLimiter.tryAcquire(loginName);
+            if (waitNanos > 0) {
+                userRejectedCounter.increment();
+                reject(response, waitNanos);
+                return;
+            }
+        }
+
+        filterChain.doFilter(new BufferedBodyRequest(request, body), response);
+    }
+
+    // Helper Methods
+
+    /**
+     * Reads the normalized login name of the request body, or null if the body has none;
+     * malformed bodies are left for the controller to reject.
+     */
+    private String readLoginName(byte[] body) {
+
+        try {
+            JsonNode name = objectMapper.readTree(body).path("name");
+
+            return name.isTextual() ? UserModel.normalizeLoginName(name.asText()) : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static void reject(HttpServletResponse response, long waitNanos) throws IOException {
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        // Rounded up, so a client that waits the advertised time gets its permit
+        long retryAfterSeconds = TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1);
+        response.setHeader(RETRY_AFTER, String.valueOf(Math.max(1, retryAfterSeconds)));
+        response.getWriter().write(ERROR_TOO_MANY_LOGINS);
+    }
+
+    /**
+     * Request whose body has already been read, served again from memory.
+     */
+    private static final class BufferedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        private BufferedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream inputStream = new ByteArrayInputStream(body);
+
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return inputStream.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return inputStream.read(b, off, len);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return inputStream.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                /**
+                 * The body is already in memory, so it is all available at once: the listener is called
+                 * right away, as a container does when the whole body has arrived.
+                 */
+                @Override
+                public void setReadListener(ReadListener readListener) {
+                    if (readListener == null) {
+                        throw new NullPointerException("readListener");
+                    }
+                    try {
+                        if (!isFinished()) {
+                            readListener.onDataAvailable();
+                        }
+                        readListener.onAllDataRead();
+                    } catch (IOException | RuntimeException e) {
+                        readListener.onError(e);
+                    }
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+    }
+}
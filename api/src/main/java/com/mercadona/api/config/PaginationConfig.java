@@ -0,0 +1,17 @@
+package com.mercadona.api.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@Getter
+public class PaginationConfig {
+
+    @Value("${users.page.default-size}")
+    private int defaultPageSize;
+
+    @Value("${users.page.max-size}")
+    private int maxPageSize;
+
+}
@@ -0,0 +1,31 @@
+package com.mercadona.api.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@Getter
+public class PasswordHashingConfig {
+
+    @Value("${auth.hashing.threads}")
+    private int threads;
+
+    @Value("${auth.hashing.queue-capacity}")
+    private int queueCapacity;
+
+    @Value("${auth.hashing.retry-after}")
+    private Duration retryAfter;
+
+    /**
+     * Returns the number of hashing threads, defaulting to one per available core.
+     *
+     * @return the number of hashing threads
+     */
+    public int getThreads() {
+        return threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+    }
+
+}
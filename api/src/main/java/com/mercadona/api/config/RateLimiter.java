@@ -0,0 +1,113 @@
+package com.mercadona.api.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Ticker;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket per key, implemented with the generic cell rate algorithm (GCRA): each key holds
+ * a single timestamp, its theoretical arrival time, updated with compare-and-set, so concurrent requests
+ * never block each other. Keys live in a Caffeine cache and expire once idle for a full burst window, when
+ * their bucket is full again, so expiring them never grants extra permits. The cache is not size-bounded,
+ * since evicting an active key would reset its bucket: once it holds the maximum number of keys, new keys
+ * are rejected until others expire, so the limiter fails closed instead.
+ */
+public class RateLimiter {
+
+    private final long emissionIntervalNanos;
+    private final long burstWindowNanos;
+    private final long maxKeys;
+    private final Ticker ticker;
+    private final Cache<String, AtomicLong> buckets;
+
+    /**
+     * Creates the limiter.
+     *
+     * @param permitsPerMinute the sustained number of permits per key and minute
+     * @param burst            the number of permits a key may take at once after being idle
+     * @param maxKeys          the maximum number of keys kept in memory
+     */
+    public RateLimiter(int permitsPerMinute, int burst, long maxKeys) {
+        this(permitsPerMinute, burst, maxKeys, Ticker.systemTicker());
+    }
+
+    /**
+     * Creates the limiter with the given time source.
+     *
+     * @param permitsPerMinute the sustained number of permits per key and minute
+     * @param burst            the number of permits a key may take at once after being idle
+     * @param maxKeys          the maximum number of keys kept in memory
+     * @param ticker           the source of the current time, in nanoseconds
+     */
+    public RateLimiter(int permitsPerMinute, int burst, long maxKeys, Ticker ticker) {
+        this.emissionIntervalNanos = TimeUnit.MINUTES.toNanos(1) / permitsPerMinute;
+        this.burstWindowNanos = emissionIntervalNanos * burst;
+        this.maxKeys = maxKeys;
+        this.ticker = ticker;
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofNanos(burstWindowNanos))
+                .ticker(ticker)
+                .build();
+    }
+
+    /**
+     * Takes a permit for the key if one is available.
+     * A new key is rejected while the limiter holds the maximum number of keys; concurrent new keys
+     * may exceed it by at most the number of threads.
+     *
+     * @param key the key, e.g. a client IP or a login name
+     * @return zero if the permit was granted, otherwise the time to wait for the next permit, in nanoseconds
+     */
+    public long tryAcquire(String key) {
+
+        long now = ticker.read();
+        AtomicLong theoreticalArrival = buckets.getIfPresent(key);
+        if (theoreticalArrival == null) {
+            if (isFull()) {
+                // Every key expires at most a burst window after its last permit
+                return burstWindowNanos;
+            }
+            theoreticalArrival = buckets.get(key, k -> new AtomicLong(now));
+        }
+
+        while (true) {
+            long current = theoreticalArrival.get();
+            long next = Math.max(current, now) + emissionIntervalNanos;
+            long allowedAt = next - burstWindowNanos;
+            if (allowedAt > now) {
+                return allowedAt - now;
+            }
+            if (theoreticalArrival.compareAndSet(current, next)) {
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Returns the approximate number of keys in memory.
+     *
+     * @return the number of tracked keys
+     */
+    public long keys() {
+        return buckets.estimatedSize();
+    }
+
+    // Helper Methods
+
+    /**
+     * Checks whether the limiter holds the maximum number of keys, once the expired ones are removed.
+     */
+    private boolean isFull() {
+
+        if (buckets.estimatedSize() < maxKeys) {
+            return false;
+        }
+        buckets.cleanUp();
+
+        return buckets.estimatedSize() >= maxKeys;
+    }
+}
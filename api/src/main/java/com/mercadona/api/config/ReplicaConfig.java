@@ -0,0 +1,38 @@
+package com.mercadona.api.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.List;
+
+@Configuration
+@Getter
+public class ReplicaConfig {
+
+    @Value("${datasource.replicas.urls}")
+    private List<String> urls;
+
+    @Value("${datasource.replicas.username}")
+    private String username;
+
+    @Value("${datasource.replicas.password}")
+    private String password;
+
+    @Value("${datasource.replicas.sticky-window}")
+    private Duration stickyWindow;
+
+    @Value("${datasource.replicas.retry-interval}")
+    private Duration retryInterval;
+
+    /**
+     * Returns the JDBC URLs of the replicas, without blank entries.
+     *
+     * @return the replica URLs, empty if every connection goes to the primary
+     */
+    public List<String> getUrls() {
+        return urls.stream().map(String::strip).filter(url -> !url.isEmpty()).toList();
+    }
+
+}
@@ -0,0 +1,201 @@
+package com.mercadona.api.config;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+import static com.mercadona.api.constants.ApiConstants.DATASOURCE_ROUTING_METRIC;
+
+/**
+ * DataSource that routes each connection to the primary database or to one of its read-only replicas.
+ * Read-only transactions get a replica, in round robin; read-write transactions and connections taken
+ * outside a transaction get the primary.
+ * <p>
+ * Once a client starts a read-write transaction, its read-only transactions also go to the primary during
+ * the sticky window, so it reads its own writes despite the replication lag. A replica that fails to give
+ * a connection is skipped during the retry interval, and its reads go to the primary meanwhile.
+ * <p>
+ * The transaction must be known when the connection is taken: this data source is used behind a
+ * LazyConnectionDataSourceProxy, and Hibernate releases its connection after every transaction.
+ * Routing decisions are counted in the "datasource.routing" metric, tagged by target and reason.
+ */
+@Slf4j
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource implements AutoCloseable {
+
+    private static final String PRIMARY = "primary";
+    private static final long MAX_STICKY_CLIENTS = 100_000;
+
+    private final DataSource primary;
+    private final DataSource[] replicas;
+    private final AtomicLongArray downUntil;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final Cache<String, Boolean> recentWriters;
+    private final Supplier<String> currentClient;
+    private final long retryIntervalNanos;
+    private final Counter writeCounter;
+    private final Counter stickyCounter;
+    private final Counter fallbackCounter;
+    private final Counter[] readCounters;
+
+    /**
+     * Creates the routing data source.
+     *
+     * @param primary       the primary database
+     * @param replicas      the read-only replicas, in the order of their names ("replica-1", "replica-2"...)
+     * @param stickyWindow  how long the reads of a client go to the primary after it writes
+     * @param retryInterval how long a replica that failed to give a connection is skipped
+     * @param currentClient identifies the client of the current request, or returns null if unknown
+     * @param meterRegistry the registry where the routing metrics are published
+     */
+    public ReplicaRoutingDataSource(DataSource primary, List<? extends DataSource> replicas, Duration stickyWindow,
+                                    Duration retryInterval, Supplier<String> currentClient, MeterRegistry meterRegistry) {
+        this.primary = primary;
+        this.replicas = replicas.toArray(new DataSource[0]);
+        this.downUntil = new AtomicLongArray(this.replicas.length);
+        this.recentWriters = Caffeine.newBuilder()
+                .expireAfterWrite(stickyWindow)
+                .maximumSize(MAX_STICKY_CLIENTS)
+                .build();
+        this.currentClient = currentClient;
+        this.retryIntervalNanos = retryInterval.toNanos();
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        this.readCounters = new Counter[this.replicas.length];
+        for (int i = 0; i < this.replicas.length; i++) {
+            targets.put(replicaName(i), this.replicas[i]);
+            readCounters[i] = routingCounter(meterRegistry, replicaName(i), "read");
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+
+        this.writeCounter = routingCounter(meterRegistry, PRIMARY, "write");
+        this.stickyCounter = routingCounter(meterRegistry, PRIMARY, "sticky");
+        this.fallbackCounter = routingCounter(meterRegistry, PRIMARY, "fallback");
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        int replica = route();
+        if (replica < 0) {
+            return primary.getConnection();
+        }
+
+        try {
+            return replicas[replica].getConnection();
+        } catch (SQLException e) {
+            markDown(replica, e);
+            return primary.getConnection();
+        }
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        int replica = route();
+        if (replica < 0) {
+            return primary.getConnection(username, password);
+        }
+
+        try {
+            return replicas[replica].getConnection(username, password);
+        } catch (SQLException e) {
+            markDown(replica, e);
+            return primary.getConnection(username, password);
+        }
+    }
+
+    /**
+     * Names the data source the current transaction would be routed to.
+     */
+    @Override
+    protected Object determineCurrentLookupKey() {
+        int replica = route();
+        return replica < 0 ? PRIMARY : replicaName(replica);
+    }
+
+    /**
+     * Closes the replica pools. The primary is a bean of its own and is closed by the container.
+     */
+    @Override
+    public void close() throws Exception {
+        for (DataSource replica : replicas) {
+            if (replica instanceof AutoCloseable closeable) {
+                closeable.close();
+            }
+        }
+    }
+
+    // Helper Methods
+
+    /**
+     * Chooses the target of a new connection.
+     *
+     * @return the index of the replica, or -1 for the primary
+     */
+    private int route() {
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (TransactionSynchronizationManager.isActualTransactionActive()) {
+                String client = currentClient.get();
+                if (client != null) {
+                    recentWriters.put(client, Boolean.TRUE);
+                }
+            }
+            writeCounter.increment();
+            return -1;
+        }
+
+        String client = currentClient.get();
+        if (client != null && recentWriters.getIfPresent(client) != null) {
+            stickyCounter.increment();
+            return -1;
+        }
+
+        long now = System.nanoTime();
+        int start = nextReplica.getAndIncrement();
+        for (int i = 0; i < replicas.length; i++) {
+            int candidate = Math.floorMod(start + i, replicas.length);
+            long until = downUntil.get(candidate);
+            if (until == 0 || until - now <= 0) {
+                readCounters[candidate].increment();
+                return candidate;
+            }
+        }
+
+        // No replicas, or all of them are down
+        fallbackCounter.increment();
+        return -1;
+    }
+
+    private void markDown(int replica, SQLException e) {
+        log.warn("Replica {} unavailable, reads go to the primary for {} ms: {}", replicaName(replica),
+                retryIntervalNanos / 1_000_000, e.getMessage());
+        downUntil.set(replica, System.nanoTime() + retryIntervalNanos);
+        fallbackCounter.increment();
+    }
+
+    private static String replicaName(int replica) {
+        return "replica-" + (replica + 1);
+    }
+
+    private static Counter routingCounter(MeterRegistry meterRegistry, String target, String reason) {
+        return Counter.builder(DATASOURCE_ROUTING_METRIC)
+                .tag("target", target)
+                .tag("reason", reason)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,34 @@
+package com.mercadona.api.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@Getter
+public class SearchConfig {
+
+    @Value("${users.search.enabled}")
+    private boolean enabled;
+
+    @Value("${users.search.max-users}")
+    private long maxUsers;
+
+    @Value("${users.search.default-results}")
+    private int defaultResults;
+
+    @Value("${users.search.max-results}")
+    private int maxResults;
+
+    @Value("${users.search.max-candidates}")
+    private int maxCandidates;
+
+    @Value("${users.search.rebuild-ratio}")
+    private double rebuildRatio;
+
+    @Value("${users.search.refresh-interval}")
+    private Duration refreshInterval;
+
+}
@@ -1,7 +1,11 @@
 package com.mercadona.api.config;
 
+import jakarta.servlet.DispatcherType;
+import org.springframework.boot.actuate.autoconfigure.security.servlet.EndpointRequest;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.event.EventListener;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
@@ -12,7 +16,7 @@ import org.springframework.security.config.annotation.web.configuration.EnableWe
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 
@@ -24,22 +28,30 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 @EnableWebSecurity
 public class SecurityConfig {
 
+    private static final String MANAGEMENT_SERVER_NAMESPACE = "management";
+
     private final UserDetailsService userDetailsService;
     private final JwtFilter jwtFilter;
-    private final BCryptPasswordEncoder passwordEncoder;
+    private final LoginThrottleFilter loginThrottleFilter;
+    private final PasswordEncoder passwordEncoder;
     private final EndpointConfig endpointConfig;
+    // Port of the management server, when it runs apart from the API
+    private volatile int managementPort = -1;
 
     /**
      * Constructor to inject required dependencies for the security configuration.
      *
-     * @param userDetailsService the service to load user details from the database
-     * @param jwtFilter          the custom filter for JWT token validation
-     * @param passwordEncoder    the encoder used to hash passwords
+     * @param userDetailsService  the service to load user details from the database
+     * @param jwtFilter           the custom filter for JWT token validation
+     * @param loginThrottleFilter the filter that throttles login attempts
+     * @param passwordEncoder     the encoder used to hash passwords
      */
-    public SecurityConfig(UserDetailsService userDetailsService, JwtFilter jwtFilter, BCryptPasswordEncoder passwordEncoder,
+    public SecurityConfig(UserDetailsService userDetailsService, JwtFilter jwtFilter,
+                          LoginThrottleFilter loginThrottleFilter, PasswordEncoder passwordEncoder,
                           EndpointConfig endpointConfig) {
         this.userDetailsService = userDetailsService;
         this.jwtFilter = jwtFilter;
+        this.loginThrottleFilter = loginThrottleFilter;
         this.passwordEncoder = passwordEncoder;
         this.endpointConfig = endpointConfig;
     }
@@ -58,14 +70,39 @@ public class SecurityConfig {
         return http
                 .csrf(AbstractHttpConfigurer::disable)
                 .authorizeHttpRequests(auth -> auth
-                        .requestMatchers(endpointConfig.getLoginEndpoint(), endpointConfig.getRegisterEndpoint()).permitAll()
+                        .requestMatchers(endpointConfig.getLoginEndpoint(), endpointConfig.getRefreshEndpoint(),
+                                endpointConfig.getRegisterEndpoint()).permitAll()
+                        // Lets error responses (400, 404...) reach the client instead of being turned into 401
+                        .requestMatchers(endpointConfig.getErrorEndpoint()).permitAll()
+                        // Health checks and Prometheus scrapes carry no user token. The management port only
+                        // serves the exposed actuator endpoints and listens on the internal interface; metrics
+                        // served on the port of the API require authentication
+                        .requestMatchers(request -> request.getLocalPort() == managementPort).permitAll()
+                        .requestMatchers(EndpointRequest.to("health")).permitAll()
+                        // Async dispatches (streamed responses) were already authorized on the original request
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
                         .anyRequest().authenticated())
                 .httpBasic(Customizer.withDefaults())
                 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class)
+                // Over-limit logins are rejected before any token, database or bcrypt work
+                .addFilterBefore(loginThrottleFilter, JwtFilter.class)
                 .build();
     }
 
+    /**
+     * Records the port of the management server once it listens, when management.server.port differs
+     * from the port of the API.
+     *
+     * @param event the event of a started web server
+     */
+    @EventListener
+    public void onWebServerInitialized(WebServerInitializedEvent event) {
+        if (MANAGEMENT_SERVER_NAMESPACE.equals(event.getApplicationContext().getServerNamespace())) {
+            managementPort = event.getWebServer().getPort();
+        }
+    }
+
     /**
      * Configures the authentication provider that handles user authentication, using
      * a DAO-based approach with password encoding.
@@ -0,0 +1,19 @@
+package com.mercadona.api.config;
+
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+@Getter
+public class UserDetailsConfig {
+
+    @Value("${users.details-cache.maximum-size}")
+    private long cacheMaximumSize;
+
+    @Value("${users.details-cache.ttl}")
+    private Duration cacheTtl;
+
+}
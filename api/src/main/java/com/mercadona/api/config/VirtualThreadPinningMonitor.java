@@ -0,0 +1,87 @@
+package com.mercadona.api.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.stream.Collectors;
+
+import static com.mercadona.api.constants.ApiConstants.VIRTUAL_THREAD_PINNED_EVENT;
+import static com.mercadona.api.constants.ApiConstants.VIRTUAL_THREAD_PINNED_METRIC;
+
+/**
+ * Watches for virtual threads pinned to their carrier thread while blocking, which happens when
+ * a blocking call is made inside a synchronized block or a native frame (e.g. an old JDBC driver).
+ * Only active when virtual threads are enabled; every pinning event longer than the threshold is
+ * logged with its stack trace and counted, so the JDBC and Hibernate paths can be checked under load.
+ */
+@Slf4j
+@Component
+public class VirtualThreadPinningMonitor implements DisposableBean {
+
+    private static final int LOGGED_FRAMES = 12;
+
+    private final RecordingStream recordingStream;
+
+    /**
+     * Starts the JFR stream of pinning events if virtual threads are enabled.
+     *
+     * @param virtualThreadsEnabled whether request handling runs on virtual threads
+     * @param threshold             the minimum pinning duration that is reported
+     * @param meterRegistry         the registry where the pinning counter is published
+     */
+    public VirtualThreadPinningMonitor(@Value("${spring.threads.virtual.enabled:false}") boolean virtualThreadsEnabled,
+                                       @Value("${app.virtual-threads.pinning-threshold}") Duration threshold,
+                                       MeterRegistry meterRegistry) {
+        if (!virtualThreadsEnabled) {
+            this.recordingStream = null;
+            return;
+        }
+
+        Counter pinnedCounter = Counter.builder(VIRTUAL_THREAD_PINNED_METRIC).register(meterRegistry);
+
+        this.recordingStream = new RecordingStream();
+        recordingStream.enable(VIRTUAL_THREAD_PINNED_EVENT).withThreshold(threshold).withStackTrace();
+        recordingStream.onEvent(VIRTUAL_THREAD_PINNED_EVENT, event -> {
+            pinnedCounter.increment();
+            log.warn("Virtual thread pinned for {} ms:\n{}", event.getDuration().toMillis(), stackTrace(event));
+        });
+        recordingStream.startAsync();
+    }
+
+    @Override
+    public void destroy() {
+        if (recordingStream != null) {
+            recordingStream.close();
+        }
+    }
+
+    /**
+     * Formats the top frames of the stack trace of a pinning event.
+     *
+     * @param event the pinning event
+     * @return the formatted stack trace
+     */
+    private static String stackTrace(RecordedEvent event) {
+        if (event.getStackTrace() == null) {
+            return "\t(no stack trace)";
+        }
+
+        return event.getStackTrace().getFrames().stream()
+                .limit(LOGGED_FRAMES)
+                .map(VirtualThreadPinningMonitor::frame)
+                .collect(Collectors.joining("\n"));
+    }
+
+    private static String frame(RecordedFrame frame) {
+        return "\tat " + frame.getMethod().getType().getName() + "." + frame.getMethod().getName()
+                + ":" + frame.getLineNumber();
+    }
+}
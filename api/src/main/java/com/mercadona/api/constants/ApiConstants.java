@@ -12,4 +12,35 @@ public class ApiConstants {
     public static final String KEY_GENERATOR_ALGORITHM = "HmacSHA256";
     public static final String BEARER_TOKEN_AUTH_TYPE = "Bearer ";
     public static final String ROLE_USER = "USER";
+    public static final String TOKEN_CACHE_NAME = "jwt.verified-tokens";
+    public static final String TOKEN_DIGEST_ALGORITHM = "SHA-256";
+    public static final String USER_DETAILS_CACHE_NAME = "users.details";
+    public static final String CACHE_HIT_RATIO_METRIC = "cache.hit.ratio";
+    public static final String USER_CACHE_REGION = "users.entity";
+    public static final String USER_NATURAL_ID_CACHE_REGION = "users.natural-id";
+    public static final String TEXT_CSV_VALUE = "text/csv";
+    public static final String PASSWORD_HASH_TIMER = "password.hash";
+    public static final String PASSWORD_HASH_QUEUE_METRIC = "password.hash.queue.size";
+    public static final String PASSWORD_HASH_REJECTED_METRIC = "password.hash.rejected";
+    public static final String VIRTUAL_THREAD_PINNED_EVENT = "jdk.VirtualThreadPinned";
+    public static final String VIRTUAL_THREAD_PINNED_METRIC = "jvm.threads.virtual.pinned";
+    public static final String AUTH_FILTER_TIMER = "auth.filter";
+    public static final String JWT_VERIFY_TIMER = "jwt.verify";
+    public static final String JWT_PARSE_TIMER = "jwt.parse";
+    public static final String JWT_GENERATE_TIMER = "jwt.generate";
+    public static final String USER_DETAILS_LOAD_TIMER = "users.details.load";
+    public static final String USER_SERVICE_TIMER = "users.service";
+    public static final String LOGIN_FILTER_METRIC_PREFIX = "users.login-filter.";
+    public static final String LOGIN_THROTTLE_REJECTED_METRIC = "auth.throttle.rejected";
+    public static final String LOGIN_THROTTLE_KEYS_METRIC = "auth.throttle.keys";
+    public static final String ERROR_TOO_MANY_LOGINS = "Too many login attempts, try again later";
+    public static final String JWT_CLAIM_USER_ID = "uid";
+    public static final String JWT_CLAIM_ROLES = "roles";
+    public static final String JWT_CLAIM_SECURITY_VERSION = "ver";
+    public static final String REVOKED_TOKENS_METRIC = "jwt.revoked-tokens";
+    public static final String JWT_SIGNING_KEYS_METRIC = "jwt.signing-keys";
+    public static final String USER_SEARCH_METRIC_PREFIX = "users.search.";
+    public static final String DATASOURCE_ROUTING_METRIC = "datasource.routing";
+    public static final String PREFER_HEADER = "Prefer";
+    public static final String PREFER_RETURN_MINIMAL = "return=minimal";
 }
@@ -0,0 +1,109 @@
+package com.mercadona.api.controllers;
+
+import com.mercadona.api.exceptions.DuplicateUserException;
+import com.mercadona.api.exceptions.HashingCapacityExceededException;
+import com.mercadona.api.exceptions.InvalidRefreshTokenException;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.stream.Collectors;
+
+import static com.mercadona.api.constants.ApiConstants.ERROR_USER_AUTHENTICATED;
+
+/**
+ * Maps the API exceptions to HTTP responses.
+ */
+@RestControllerAdvice
+public class ApiExceptionHandler {
+
+    /**
+     * Responde 503 con Retry-After cuando no hay capacidad para calcular más hashes de contraseña.
+     *
+     * @param e Excepción lanzada por el encoder.
+     * @return Respuesta 503 con la cabecera Retry-After.
+     */
+    @ExceptionHandler(HashingCapacityExceededException.class)
+    public ResponseEntity<String> handleHashingCapacityExceeded(HashingCapacityExceededException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(Math.max(1, e.getRetryAfter().toSeconds())))
+                .body(e.getMessage());
+    }
+
+    /**
+     * Responde 400 cuando los datos de un usuario no cumplen sus restricciones.
+     *
+     * @param e Excepción lanzada al validar el usuario.
+     * @return Respuesta 400 con los mensajes de las restricciones incumplidas.
+     */
+    @ExceptionHandler(ConstraintViolationException.class)
+    public ResponseEntity<String> handleConstraintViolation(ConstraintViolationException e) {
+        String messages = e.getConstraintViolations().stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining(", "));
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(messages);
+    }
+
+    /**
+     * Responde 409 cuando el nombre de usuario ya existe.
+     *
+     * @param e Excepción lanzada al registrar o actualizar el usuario.
+     * @return Respuesta 409 con el motivo.
+     */
+    @ExceptionHandler(DuplicateUserException.class)
+    public ResponseEntity<String> handleDuplicateUser(DuplicateUserException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+    }
+
+    /**
+     * Responde 409 cuando una escritura viola una restricción única (nombre o email repetidos).
+     *
+     * @param e Excepción lanzada por la base de datos.
+     * @return Respuesta 409.
+     */
+    @ExceptionHandler(DataIntegrityViolationException.class)
+    public ResponseEntity<String> handleDataIntegrityViolation(DataIntegrityViolationException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body("User name or email already exists");
+    }
+
+    /**
+     * Responde 409 cuando otra petición ha modificado el usuario mientras se actualizaba.
+     *
+     * @param e Excepción lanzada al comprobar la versión del usuario.
+     * @return Respuesta 409.
+     */
+    @ExceptionHandler(OptimisticLockingFailureException.class)
+    public ResponseEntity<String> handleOptimisticLockingFailure(OptimisticLockingFailureException e) {
+        return ResponseEntity.status(HttpStatus.CONFLICT).body("User was modified concurrently, try again");
+    }
+
+    /**
+     * Responde 401 cuando falla el inicio de sesión.
+     *
+     * @param e Excepción lanzada al autenticar.
+     * @return Respuesta 401 con el mensaje de error.
+     */
+    @ExceptionHandler(AuthenticationException.class)
+    public ResponseEntity<String> handleAuthentication(AuthenticationException e) {
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(ERROR_USER_AUTHENTICATED);
+    }
+
+    /**
+     * Responde 401 cuando el token de refresco no es válido, ha caducado o ya se usó.
+     *
+     * @param e Excepción lanzada al renovar los tokens.
+     * @return Respuesta 401 con el motivo.
+     */
+    @ExceptionHandler(InvalidRefreshTokenException.class)
+    public ResponseEntity<String> handleInvalidRefreshToken(InvalidRefreshTokenException e) {
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(e.getMessage());
+    }
+}
@@ -1,15 +1,22 @@
 package com.mercadona.api.controllers;
 
+import com.mercadona.api.models.RefreshRequest;
+import com.mercadona.api.models.TokenResponse;
 import com.mercadona.api.models.UserModel;
 import com.mercadona.api.services.AuthService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.core.AuthenticationException;
+import org.springframework.http.HttpStatus;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseStatus;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
-import static com.mercadona.api.constants.ApiConstants.ERROR_USER_AUTHENTICATED;
+import static com.mercadona.api.constants.ApiConstants.AUTH_HEADER_IDX;
+import static com.mercadona.api.constants.ApiConstants.BEARER_TOKEN_AUTH_TYPE;
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
 
 @RestController
 @RequestMapping("/auth")
@@ -24,18 +31,48 @@ public class AuthController {
 
     /**
      * Endpoint para iniciar sesión de un usuario.
+     * Si falla la autenticación se responde 401 con el mensaje de error.
      *
      * @param user Datos de inicio de sesión.
-     * @return Token JWT o mensaje de error si falla la autenticación.
+     * @return Token de acceso JWT y token de refresco.
      */
     @PostMapping("/login")
-    public String login(@RequestBody UserModel user) {
+    public TokenResponse login(@RequestBody UserModel user) {
 
-        try {
-            return authService.verify(user);
-        } catch (AuthenticationException e) {
-            return ERROR_USER_AUTHENTICATED;
-        }
+        return authService.verify(user);
+    }
+
+    /**
+     * Endpoint para renovar los tokens sin volver a enviar la contraseña.
+     * Cada token de refresco solo se puede usar una vez; si falla se responde 401.
+     *
+     * @param request Token de refresco.
+     * @return Nuevo token de acceso JWT y nuevo token de refresco.
+     */
+    @PostMapping("/refresh")
+    public TokenResponse refresh(@RequestBody RefreshRequest request) {
+
+        return authService.refresh(request.refreshToken());
     }
 
+    /**
+     * Endpoint para cerrar sesión. Requiere el token de acceso, que queda revocado hasta su caducidad;
+     * si se envía el token de refresco también se revoca su familia.
+     *
+     * @param authorization Cabecera Authorization con el token de acceso.
+     * @param request       Token de refresco, opcional.
+     * @throws ResponseStatusException 400 si la cabecera no lleva un token Bearer.
+     */
+    @PostMapping("/logout")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void logout(@RequestHeader(AUTHORIZATION) String authorization,
+                       @RequestBody(required = false) RefreshRequest request) {
+
+        // La cadena de seguridad también acepta Basic: solo se revoca un token Bearer, como en JwtFilter
+        if (!authorization.startsWith(BEARER_TOKEN_AUTH_TYPE)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "A Bearer access token is required");
+        }
+
+        authService.logout(authorization.substring(AUTH_HEADER_IDX), request == null ? null : request.refreshToken());
+    }
 }
@@ -1,22 +1,55 @@
 package com.mercadona.api.controllers;
 
+import com.mercadona.api.models.ImportReport;
+import com.mercadona.api.models.UserMatch;
 import com.mercadona.api.models.UserModel;
+import com.mercadona.api.models.UserPage;
+import com.mercadona.api.models.UserView;
+import com.mercadona.api.services.UserExportService;
+import com.mercadona.api.services.UserImportService;
 import com.mercadona.api.services.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 
+import static com.mercadona.api.constants.ApiConstants.PREFER_HEADER;
+import static com.mercadona.api.constants.ApiConstants.PREFER_RETURN_MINIMAL;
+import static com.mercadona.api.constants.ApiConstants.TEXT_CSV_VALUE;
+import static org.springframework.http.HttpHeaders.CACHE_CONTROL;
+import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.HttpHeaders.IF_MATCH;
+import static org.springframework.http.HttpHeaders.IF_NONE_MATCH;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+import static org.springframework.http.MediaType.APPLICATION_NDJSON_VALUE;
+
 @RestController
 @RequestMapping("/users")
 public class UserController {
 
+    // Los clientes pueden guardar el usuario, pero deben revalidarlo con su ETag antes de usarlo
+    private static final CacheControl USER_CACHE_CONTROL = CacheControl.noCache().cachePrivate();
+
     private final UserService userService;
+    private final UserExportService userExportService;
+    private final UserImportService userImportService;
 
     @Autowired
-    public UserController(UserService userService) {
+    public UserController(UserService userService, UserExportService userExportService,
+                          UserImportService userImportService) {
         this.userService = userService;
+        this.userExportService = userExportService;
+        this.userImportService = userImportService;
     }
 
     /**
@@ -26,20 +59,75 @@ public class UserController {
      * @return El usuario registrado.
      */
     @PostMapping("/register")
-    public UserModel register(@RequestBody UserModel user) {
+    public UserView register(@RequestBody UserModel user) {
         return userService.register(user);
     }
 
     /**
-     * Endpoint para obtener la lista de todos los usuarios.
+     * Endpoint para obtener una página de usuarios, paginando por cursor.
      *
-     * @return Lista de usuarios.
+     * @param cursor Cursor de la página anterior (opcional).
+     * @param limit  Tamaño de página (opcional).
+     * @param name   Prefijo del nombre (opcional).
+     * @param email  Prefijo del email (opcional).
+     * @return Página de usuarios con el cursor de la siguiente página.
      */
     @GetMapping
-    public List<UserModel> getUsers() {
+    public UserPage getUsers(@RequestParam(required = false) String cursor,
+                             @RequestParam(required = false) Integer limit,
+                             @RequestParam(required = false) String name,
+                             @RequestParam(required = false) String email) {
+        return userService.getUsersPage(cursor, limit, name, email);
+    }
+
+    /**
+     * Endpoint para buscar usuarios por nombre o email (autocompletado), sin consultar la base de datos.
+     *
+     * @param q     Texto a buscar.
+     * @param limit Número máximo de resultados (opcional).
+     * @return Usuarios encontrados, primero los que empiezan por el texto.
+     */
+    @GetMapping("/search")
+    public List<UserMatch> searchUsers(@RequestParam String q, @RequestParam(required = false) Integer limit) {
+        return userService.searchUsers(q, limit);
+    }
+
+    /**
+     * Endpoint para importar usuarios de forma masiva desde un CSV, un array JSON o NDJSON.
+     * Cada lote se inserta de forma atómica y se devuelve el resultado de cada fila.
+     *
+     * @param contentType Tipo del documento recibido.
+     * @param body        Documento con los usuarios.
+     * @return Informe de la importación por fila.
+     * @throws IOException Si no se puede leer el documento.
+     */
+    @PostMapping(value = "/import", consumes = {TEXT_CSV_VALUE, APPLICATION_JSON_VALUE, APPLICATION_NDJSON_VALUE})
+    public ImportReport importUsers(@RequestHeader(CONTENT_TYPE) String contentType, InputStream body) throws IOException {
+        return userImportService.importUsers(contentType, body);
+    }
+
+    /**
+     * Endpoint para obtener la lista de todos los usuarios sin paginar.
+     * Solo se atiende si se pide explícitamente con unpaged=true.
+     *
+     * @return Lista de usuarios.
+     */
+    @GetMapping(params = "unpaged=true")
+    public List<UserView> getAllUsers() {
         return userService.getUsers();
     }
 
+    /**
+     * Endpoint para exportar todos los usuarios en formato NDJSON (un JSON por línea).
+     * La respuesta se escribe en streaming, sin cargar la tabla en memoria.
+     *
+     * @return Cuerpo de la respuesta que escribe los usuarios.
+     */
+    @GetMapping(value = "/export", produces = APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody exportUsers() {
+        return userExportService::exportUsers;
+    }
+
     /**
      * Endpoint para crear o actualizar un usuario.
      *
@@ -47,45 +135,146 @@ public class UserController {
      * @return El usuario creado o actualizado.
      */
     @PostMapping
-    public UserModel setUser(@RequestBody UserModel userModel) {
+    public UserView setUser(@RequestBody UserModel userModel) {
         return userService.setUser(userModel);
     }
 
     /**
-     * Endpoint para obtener un usuario por su ID.
+     * Endpoint para obtener un usuario por su ID, con su versión como ETag.
+     * Con If-None-Match solo se consulta la versión: si el cliente ya tiene la actual se responde 304
+     * sin cargar ni serializar el usuario.
      *
-     * @param id ID del usuario.
-     * @return Usuario encontrado o un Optional vacío.
+     * @param id      ID del usuario.
+     * @param request Petición, para evaluar las cabeceras condicionales.
+     * @return Usuario encontrado, 304 si no ha cambiado o 404 si no existe.
      */
     @GetMapping("/{id}")
-    public Optional<UserModel> getUserById(@PathVariable Long id) {
-        return userService.getUserById(id);
+    public ResponseEntity<UserView> getUserById(@PathVariable Long id, ServletWebRequest request) {
+        if (request.getHeader(IF_NONE_MATCH) != null) {
+            Optional<Long> version = userService.getUserVersion(id);
+            if (version.isPresent() && request.checkNotModified(eTag(version.get()))) {
+                request.getResponse().setHeader(CACHE_CONTROL, USER_CACHE_CONTROL.getHeaderValue());
+                return null;
+            }
+        }
+
+        return userService.getUserById(id)
+                .map(user -> ResponseEntity.ok()
+                        .eTag(eTag(user.version()))
+                        .cacheControl(USER_CACHE_CONTROL)
+                        .body(user))
+                .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
     /**
-     * Endpoint para actualizar un usuario existente por su ID.
+     * Endpoint para actualizar el nombre y el email de un usuario existente por su ID.
+     * La actualización es una única sentencia UPDATE; con If-Match solo se aplica si el ETag coincide
+     * con la versión actual y, si no, se responde 412. Si el usuario no existe se responde 404.
      *
      * @param userModelRequest Datos actualizados del usuario.
      * @param id               ID del usuario a actualizar.
-     * @return Usuario actualizado.
+     * @param ifMatch          Cabecera If-Match (opcional).
+     * @param prefer           Cabecera Prefer (opcional): con return=minimal no se devuelve el usuario.
+     * @return Usuario actualizado con su nueva versión como ETag, o 204 con return=minimal.
      */
     @PutMapping("/{id}")
-    public UserModel updateUserById(@RequestBody UserModel userModelRequest, @PathVariable Long id) {
-        return userService.updateUserById(userModelRequest, id);
+    public ResponseEntity<UserView> updateUserById(@RequestBody UserModel userModelRequest, @PathVariable Long id,
+                                                   @RequestHeader(value = IF_MATCH, required = false) String ifMatch,
+                                                   @RequestHeader(value = PREFER_HEADER, required = false) String prefer) {
+        List<Long> expectedVersions = parseIfMatch(ifMatch);
+
+        return updated(userService.updateUserById(userModelRequest, id, expectedVersions), prefer);
+    }
+
+    /**
+     * Endpoint para actualizar solo los campos indicados de un usuario por su ID.
+     * Solo se escriben las columnas de los campos no nulos, en una única sentencia UPDATE.
+     *
+     * @param userModelRequest Campos a actualizar del usuario.
+     * @param id               ID del usuario a actualizar.
+     * @param ifMatch          Cabecera If-Match (opcional).
+     * @param prefer           Cabecera Prefer (opcional): con return=minimal no se devuelve el usuario.
+     * @return Usuario actualizado con su nueva versión como ETag, o 204 con return=minimal.
+     */
+    @PatchMapping("/{id}")
+    public ResponseEntity<UserView> patchUserById(@RequestBody UserModel userModelRequest, @PathVariable Long id,
+                                                  @RequestHeader(value = IF_MATCH, required = false) String ifMatch,
+                                                  @RequestHeader(value = PREFER_HEADER, required = false) String prefer) {
+        List<Long> expectedVersions = parseIfMatch(ifMatch);
+
+        return updated(userService.patchUserById(userModelRequest, id, expectedVersions), prefer);
     }
 
     /**
      * Endpoint para eliminar un usuario por su ID.
      *
      * @param id ID del usuario a eliminar.
-     * @return Mensaje de éxito o error.
+     * @return Mensaje de éxito, o de error con 404 si no existe.
      */
     @DeleteMapping("/{id}")
-    public String deleteUserById(@PathVariable Long id) {
+    public ResponseEntity<String> deleteUserById(@PathVariable Long id) {
         if (userService.deleteUser(id)) {
-            return "User " + id + " deleted successfully";
+            return ResponseEntity.ok("User " + id + " deleted successfully");
+        }
+        return ResponseEntity.status(HttpStatus.NOT_FOUND).body("Error: User " + id + " could not be deleted");
+    }
+
+    /**
+     * Construye la respuesta de una actualización con el usuario que devuelve, sin volver a leerlo.
+     *
+     * @param user   Usuario actualizado, con su nueva versión.
+     * @param prefer Cabecera Prefer, o null.
+     * @return Respuesta de la actualización, sin cuerpo con return=minimal.
+     */
+    private ResponseEntity<UserView> updated(UserView user, String prefer) {
+        if (prefer != null && prefer.contains(PREFER_RETURN_MINIMAL)) {
+            return ResponseEntity.noContent().eTag(eTag(user.version())).build();
+        }
+
+        return ResponseEntity.ok().eTag(eTag(user.version())).body(user);
+    }
+
+    /**
+     * Obtiene las versiones de la cabecera If-Match. Solo se comparan ETags fuertes.
+     *
+     * @param ifMatch Cabecera If-Match, o null.
+     * @return null sin cabecera, lista vacía para "*" o las versiones indicadas.
+     * @throws ResponseStatusException 412 si ningún ETag puede coincidir.
+     */
+    private static List<Long> parseIfMatch(String ifMatch) {
+        if (ifMatch == null) {
+            return null;
+        }
+        if (ifMatch.trim().equals("*")) {
+            return List.of();
+        }
+
+        List<Long> versions = new ArrayList<>();
+        for (String tag : ifMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.length() > 2 && tag.startsWith("\"") && tag.endsWith("\"")) {
+                try {
+                    versions.add(Long.parseLong(tag.substring(1, tag.length() - 1)));
+                } catch (NumberFormatException e) {
+                    // No es un ETag de esta API: no puede coincidir
+                }
+            }
         }
-        return "Error: User " + id + " could not be deleted";
+        if (versions.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "User was modified");
+        }
+
+        return versions;
+    }
+
+    /**
+     * Construye el ETag fuerte de un usuario a partir de su versión.
+     *
+     * @param version Versión del usuario.
+     * @return ETag entre comillas.
+     */
+    private static String eTag(long version) {
+        return "\"" + version + "\"";
     }
 
 }
@@ -0,0 +1,24 @@
+package com.mercadona.api.events;
+
+/**
+ * Event published by UserService after a user has been created, updated or deleted.
+ * Listeners use it to keep their in-memory views of the users table consistent.
+ *
+ * @param idUser          the ID of the changed user
+ * @param previousName    the name of the user before the change, or null if unknown or created
+ * @param currentName     the name of the user after the change, or null if deleted or not changed
+ * @param currentEmail    the email of the user after the change, or null if deleted or not changed
+ * @param securityVersion the security version of the user after the change, or null if deleted or unknown
+ */
+public record UserChangedEvent(Long idUser, String previousName, String currentName, String currentEmail,
+                               Integer securityVersion) {
+
+    /**
+     * Indicates whether the user was deleted.
+     *
+     * @return true if neither the name nor the email of the user are known after the change
+     */
+    public boolean isDeleted() {
+        return currentName == null && currentEmail == null;
+    }
+}
@@ -0,0 +1,12 @@
+package com.mercadona.api.exceptions;
+
+/**
+ * Thrown when a user cannot be stored because its login name is already taken.
+ * Mapped to a 409 Conflict response.
+ */
+public class DuplicateUserException extends RuntimeException {
+
+    public DuplicateUserException(String name) {
+        super("User name already exists: " + name);
+    }
+}
@@ -0,0 +1,20 @@
+package com.mercadona.api.exceptions;
+
+import lombok.Getter;
+
+import java.time.Duration;
+
+/**
+ * Thrown when the password hashing pool is saturated and a new hash cannot be queued.
+ * Mapped to a 503 Service Unavailable response with a Retry-After header.
+ */
+@Getter
+public class HashingCapacityExceededException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public HashingCapacityExceededException(Duration retryAfter) {
+        super("Password hashing capacity exceeded, retry later");
+        this.retryAfter = retryAfter;
+    }
+}
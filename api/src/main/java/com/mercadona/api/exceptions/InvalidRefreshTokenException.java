@@ -0,0 +1,12 @@
+package com.mercadona.api.exceptions;
+
+/**
+ * Thrown when a refresh token is unknown, expired, revoked or has already been used.
+ * Mapped to a 401 Unauthorized response.
+ */
+public class InvalidRefreshTokenException extends RuntimeException {
+
+    public InvalidRefreshTokenException(String message) {
+        super(message);
+    }
+}
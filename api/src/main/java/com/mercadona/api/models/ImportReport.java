@@ -0,0 +1,14 @@
+package com.mercadona.api.models;
+
+import java.util.List;
+
+/**
+ * Report of a bulk user import, with one result per row.
+ *
+ * @param total    the number of rows read
+ * @param imported the number of users inserted
+ * @param failed   the number of rows rejected
+ * @param rows     the result of every row, in document order
+ */
+public record ImportReport(int total, int imported, int failed, List<ImportRowResult> rows) {
+}
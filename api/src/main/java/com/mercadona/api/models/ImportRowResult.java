@@ -0,0 +1,20 @@
+package com.mercadona.api.models;
+
+/**
+ * Result of importing one row of a bulk user import.
+ *
+ * @param row    the 1-based position of the row in the imported document
+ * @param idUser the ID assigned to the imported user, or null if the row was not imported
+ * @param error  the reason the row was rejected, or null if it was imported
+ */
+public record ImportRowResult(int row, Long idUser, String error) {
+
+    /**
+     * Indicates whether the row was imported.
+     *
+     * @return true if the user was inserted, false otherwise
+     */
+    public boolean isImported() {
+        return error == null;
+    }
+}
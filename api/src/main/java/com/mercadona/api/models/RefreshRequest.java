@@ -0,0 +1,9 @@
+package com.mercadona.api.models;
+
+/**
+ * Body of the refresh endpoint.
+ *
+ * @param refreshToken the refresh token obtained from the last login or refresh
+ */
+public record RefreshRequest(String refreshToken) {
+}
@@ -0,0 +1,55 @@
+package com.mercadona.api.models;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Entity class representing an issued refresh token.
+ * Maps to the 'refresh_tokens' table in the database.
+ * Only the SHA-256 digest of the token is stored, so a leaked table cannot be replayed.
+ * Tokens obtained from the same login share a family: rotating a token marks it as used and
+ * issues the next one in the family, and presenting a used token revokes the whole family.
+ */
+@Entity
+@Table(name = "refresh_tokens", indexes = {
+        @Index(name = "idx_refresh_tokens_user", columnList = "id_user"),
+        @Index(name = "idx_refresh_tokens_family", columnList = "family_id")
+})
+@NoArgsConstructor
+@Data
+public class RefreshTokenModel {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long idRefreshToken;
+
+    /**
+     * Hex-encoded SHA-256 digest of the token.
+     */
+    @Column(name = "token_hash", nullable = false, unique = true, length = 64)
+    private String tokenHash;
+
+    @Column(name = "id_user", nullable = false)
+    private Long idUser;
+
+    /**
+     * Identifier shared by all the tokens rotated from the same login.
+     */
+    @Column(name = "family_id", nullable = false, length = 36)
+    private String familyId;
+
+    @Column(nullable = false)
+    private Instant expiresAt;
+
+    /**
+     * Time at which the token was exchanged for a new one, or null if it was never used.
+     */
+    private Instant usedAt;
+
+    @Column(nullable = false)
+    private boolean revoked;
+
+}
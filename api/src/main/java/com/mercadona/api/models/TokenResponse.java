@@ -0,0 +1,12 @@
+package com.mercadona.api.models;
+
+/**
+ * Tokens returned by the login and refresh endpoints.
+ *
+ * @param accessToken  the JWT to send in the Authorization header
+ * @param refreshToken the opaque token to exchange for a new pair at the refresh endpoint, usable once
+ * @param tokenType    the authorization scheme of the access token
+ * @param expiresIn    the lifetime of the access token, in seconds
+ */
+public record TokenResponse(String accessToken, String refreshToken, String tokenType, long expiresIn) {
+}
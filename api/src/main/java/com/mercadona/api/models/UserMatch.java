@@ -0,0 +1,11 @@
+package com.mercadona.api.models;
+
+/**
+ * User found by the search index.
+ *
+ * @param idUser the ID of the user
+ * @param name   the name of the user
+ * @param email  the email of the user
+ */
+public record UserMatch(Long idUser, String name, String email) {
+}
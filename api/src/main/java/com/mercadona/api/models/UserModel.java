@@ -1,18 +1,34 @@
 package com.mercadona.api.models;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import jakarta.persistence.*;
 import jakarta.validation.constraints.Email;
 import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.Size;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
+import org.hibernate.annotations.NaturalId;
+import org.hibernate.annotations.NaturalIdCache;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+import static com.mercadona.api.constants.ApiConstants.USER_CACHE_REGION;
+import static com.mercadona.api.constants.ApiConstants.USER_NATURAL_ID_CACHE_REGION;
 
 /**
  * Entity class representing a User in the system.
  * Maps to the 'users' table in the database.
+ * Cached in the second-level cache by ID and by login name, its natural id, see EntityCacheConfig.
  */
 @Entity
 @Table(name = "users")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = USER_CACHE_REGION)
+@NaturalIdCache(region = USER_NATURAL_ID_CACHE_REGION)
 @NoArgsConstructor
 @Data
 public class UserModel {
@@ -28,6 +44,17 @@ public class UserModel {
     @NotEmpty(message = "Name cannot be empty")
     private String name;
 
+    /**
+     * Normalized name used to log in: trimmed, NFKC-normalized and lower-cased.
+     * Derived from the name before every insert or update, and uniquely indexed so login lookups
+     * never scan the table. Nullable only for rows created before the column existed.
+     * It is the natural id of the user: it changes with the name, and login lookups by it are cached.
+     */
+    @NaturalId(mutable = true)
+    @Column(name = "login_name", unique = true)
+    @JsonIgnore
+    private String loginName;
+
     /**
      * Hashed password of the user.
      * It is recommended to use a secure password hashing function.
@@ -44,4 +71,46 @@ public class UserModel {
     @NotEmpty(message = "Email cannot be empty")
     private String email;
 
+    /**
+     * Security version of the user, embedded in its access tokens.
+     * Increased whenever the name or the password changes, so tokens issued before the change are rejected.
+     */
+    @Column(name = "security_version", nullable = false)
+    @ColumnDefault("0")
+    @JsonIgnore
+    private int securityVersion;
+
+    /**
+     * Version of the row, increased by Hibernate on every update and checked by the update statement
+     * (optimistic locking). Exposed as the ETag of the user, see UserController.
+     */
+    @Version
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    @JsonIgnore
+    private long version;
+
+    /**
+     * Normalizes a user name into its login name.
+     *
+     * @param name the user name
+     * @return the login name, or null if the name is null
+     */
+    public static String normalizeLoginName(String name) {
+        if (name == null) {
+            return null;
+        }
+
+        return Normalizer.normalize(name.strip(), Normalizer.Form.NFKC).toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Keeps the login name in sync with the name.
+     */
+    @PrePersist
+    @PreUpdate
+    void updateLoginName() {
+        this.loginName = normalizeLoginName(name);
+    }
+
 }
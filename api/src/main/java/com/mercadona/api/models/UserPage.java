@@ -0,0 +1,12 @@
+package com.mercadona.api.models;
+
+import java.util.List;
+
+/**
+ * One page of users from a keyset-paginated listing.
+ *
+ * @param items      the users of the page, ordered by ID
+ * @param nextCursor the opaque cursor to request the next page, or null if this is the last page
+ */
+public record UserPage(List<UserView> items, String nextCursor) {
+}
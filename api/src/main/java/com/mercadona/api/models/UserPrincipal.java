@@ -12,8 +12,35 @@ import static com.mercadona.api.constants.ApiConstants.ROLE_USER;
 /**
  * Class that implements the UserDetails interface to provide
  * user details to Spring Security.
+ * Only keeps the fields needed for authentication, so it can be cached without the user entity.
+ *
+ * @param idUser          the ID of the user
+ * @param username        the username
+ * @param password        the hashed password, or null once the credentials are no longer needed
+ * @param securityVersion the security version of the user, see {@link UserModel#getSecurityVersion()}
  */
-public record UserPrincipal(UserModel userModel) implements UserDetails {
+public record UserPrincipal(Long idUser, String username, String password, int securityVersion)
+        implements UserDetails {
+
+    /**
+     * Creates the principal of the given user, including its hashed password.
+     *
+     * @param userModel the user entity
+     * @return the principal of the user
+     */
+    public static UserPrincipal from(UserModel userModel) {
+        return new UserPrincipal(userModel.getIdUser(), userModel.getName(), userModel.getPassword(),
+                userModel.getSecurityVersion());
+    }
+
+    /**
+     * Returns a copy of this principal without the hashed password.
+     *
+     * @return the principal without credentials
+     */
+    public UserPrincipal withoutPassword() {
+        return new UserPrincipal(idUser, username, null, securityVersion);
+    }
 
     /**
      * Returns the authorities granted to the user.
@@ -32,7 +59,7 @@ public record UserPrincipal(UserModel userModel) implements UserDetails {
      */
     @Override
     public String getPassword() {
-        return userModel.getPassword();
+        return password;
     }
 
     /**
@@ -42,7 +69,7 @@ public record UserPrincipal(UserModel userModel) implements UserDetails {
      */
     @Override
     public String getUsername() {
-        return userModel.getName();
+        return username;
     }
 
     /**
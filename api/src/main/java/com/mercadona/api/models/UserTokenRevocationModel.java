@@ -0,0 +1,36 @@
+package com.mercadona.api.models;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Entity class representing the revocation of every access token of a deleted user.
+ * Maps to the 'user_token_revocations' table in the database.
+ * Tokens of the user issued before notBefore are rejected in claims-only mode, on every instance,
+ * until expiresAt, when the last of them has expired anyway.
+ */
+@Entity
+@Table(name = "user_token_revocations", indexes = {
+        @Index(name = "idx_user_token_revocations_expires_at", columnList = "expires_at")
+})
+@NoArgsConstructor
+@Data
+public class UserTokenRevocationModel {
+
+    @Id
+    @Column(name = "id_user")
+    private Long idUser;
+
+    /**
+     * Time, in epoch seconds, before which the tokens of the user were issued.
+     */
+    @Column(name = "not_before", nullable = false)
+    private long notBefore;
+
+    @Column(name = "expires_at", nullable = false)
+    private Instant expiresAt;
+
+}
@@ -0,0 +1,32 @@
+package com.mercadona.api.models;
+
+/**
+ * Outcome of an update of a user. Only an applied update carries the previous name, the security version
+ * and the updated user.
+ *
+ * @param status          whether the update was applied, or why not
+ * @param previousName    the name of the user before the update
+ * @param securityVersion the security version of the user after the update
+ * @param user            the view of the user after the update, with its new version
+ */
+public record UserUpdate(Status status, String previousName, Integer securityVersion, UserView user) {
+
+    /**
+     * Result of an update.
+     */
+    public enum Status {
+        UPDATED,
+        NOT_FOUND,
+        VERSION_MISMATCH
+    }
+
+    /**
+     * Creates the outcome of an update that was not applied.
+     *
+     * @param status the reason, NOT_FOUND or VERSION_MISMATCH
+     * @return the outcome, without any user data
+     */
+    public static UserUpdate notApplied(Status status) {
+        return new UserUpdate(status, null, null, null);
+    }
+}
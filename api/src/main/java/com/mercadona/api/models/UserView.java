@@ -0,0 +1,26 @@
+package com.mercadona.api.models;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * Read-side representation of a user, as returned by the API.
+ * Filled by constructor projections that select only these columns, so the password hash is
+ * neither loaded nor serialized.
+ *
+ * @param idUser  the ID of the user
+ * @param name    the name of the user
+ * @param email   the email of the user
+ * @param version the version of the user, sent as the ETag instead of in the body
+ */
+public record UserView(Long idUser, String name, String email, @JsonIgnore long version) {
+
+    /**
+     * Creates the view of a user entity that is already loaded.
+     *
+     * @param userModel the user entity
+     * @return the view of the user
+     */
+    public static UserView from(UserModel userModel) {
+        return new UserView(userModel.getIdUser(), userModel.getName(), userModel.getEmail(), userModel.getVersion());
+    }
+}
@@ -0,0 +1,39 @@
+package com.mercadona.api.models;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Immutable view of a JWT whose signature and expiration have already been verified.
+ * Produced by a single parse so callers never need to decode the same token twice.
+ *
+ * @param subject         the username the token was issued to
+ * @param expiresAt       the expiration time of the token
+ * @param issuedAt        the time at which the token was issued
+ * @param idUser          the ID of the user, or null for tokens issued without user claims
+ * @param roles           the roles granted to the user, or an empty list for tokens issued without user claims
+ * @param securityVersion the security version of the user when the token was issued, or null if absent
+ * @param jti             the 64-bit ID of the token, or 0 for tokens issued without ID
+ */
+public record VerifiedToken(String subject, Date expiresAt, Date issuedAt, Long idUser, List<String> roles,
+                            Integer securityVersion, long jti) {
+
+    /**
+     * Indicates whether the token is expired at the given instant.
+     *
+     * @param nowMillis the current time in epoch milliseconds
+     * @return true if the token is expired, false otherwise
+     */
+    public boolean isExpiredAt(long nowMillis) {
+        return expiresAt.getTime() <= nowMillis;
+    }
+
+    /**
+     * Indicates whether the token carries the user claims needed to authenticate without loading the user.
+     *
+     * @return true if the user ID and the security version are present
+     */
+    public boolean hasUserClaims() {
+        return idUser != null && securityVersion != null;
+    }
+}
@@ -0,0 +1,75 @@
+package com.mercadona.api.repositories;
+
+import com.mercadona.api.models.RefreshTokenModel;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Repository interface for managing {@link RefreshTokenModel} entities.
+ * Every lookup goes through the unique index on the token digest or the indexes on user and family.
+ */
+@Repository
+public interface IRefreshTokenRepository extends JpaRepository<RefreshTokenModel, Long> {
+
+    /**
+     * Finds a refresh token by the digest of its value.
+     * @param tokenHash the hex-encoded SHA-256 digest of the token.
+     * @return the refresh token, if any.
+     */
+    Optional<RefreshTokenModel> findByTokenHash(String tokenHash);
+
+    /**
+     * Marks a token as used, only if it is still unused and not revoked.
+     * The condition makes the exchange atomic: of two concurrent refreshes with the same token, one wins.
+     * @param idRefreshToken the ID of the token.
+     * @param usedAt         the time of use.
+     * @return 1 if the token was marked, 0 if it had already been used or revoked.
+     */
+    @Modifying
+    @Query("update RefreshTokenModel t set t.usedAt = :usedAt "
+            + "where t.idRefreshToken = :idRefreshToken and t.usedAt is null and t.revoked = false")
+    int markUsed(@Param("idRefreshToken") Long idRefreshToken, @Param("usedAt") Instant usedAt);
+
+    /**
+     * Revokes every token of a family.
+     * @param familyId the family to revoke.
+     * @return the number of revoked tokens.
+     */
+    @Modifying
+    @Query("update RefreshTokenModel t set t.revoked = true where t.familyId = :familyId")
+    int revokeFamily(@Param("familyId") String familyId);
+
+    /**
+     * Revokes every token of a user, in all its families.
+     * @param idUser the ID of the user.
+     * @return the number of revoked tokens.
+     */
+    @Modifying
+    @Query("update RefreshTokenModel t set t.revoked = true where t.idUser = :idUser and t.revoked = false")
+    int revokeByIdUser(@Param("idUser") Long idUser);
+
+    /**
+     * Deletes the expired tokens of a user.
+     * @param idUser the ID of the user.
+     * @param now    the current time.
+     * @return the number of deleted tokens.
+     */
+    @Modifying
+    @Query("delete from RefreshTokenModel t where t.idUser = :idUser and t.expiresAt < :now")
+    int deleteExpired(@Param("idUser") Long idUser, @Param("now") Instant now);
+
+    /**
+     * Deletes every token of a user.
+     * @param idUser the ID of the user.
+     * @return the number of deleted tokens.
+     */
+    @Modifying
+    @Query("delete from RefreshTokenModel t where t.idUser = :idUser")
+    int deleteByIdUser(@Param("idUser") Long idUser);
+}
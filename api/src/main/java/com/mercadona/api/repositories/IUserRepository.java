@@ -1,20 +1,61 @@
 package com.mercadona.api.repositories;
 
 import com.mercadona.api.models.UserModel;
+import com.mercadona.api.models.UserView;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+import java.util.Optional;
 
 /**
  * Repository interface for managing {@link UserModel} entities.
- * Extends {@link JpaRepository} to provide basic CRUD operations and custom query methods.
+ * Extends {@link JpaRepository} to provide basic CRUD operations and custom query methods,
+ * and {@link IUserRepositoryCustom} for the natural-id lookup and the writes that keep the second-level cache
+ * consistent.
+ * The queries behind the read endpoints are read-only transactions, so they can be served by a replica;
+ * the lookups by login name stay on the primary, as login and registration must see the latest users.
+ * Single users are read with findCachedById, which goes through the second-level cache and fills it from
+ * the primary.
  */
 @Repository
-public interface IUserRepository extends JpaRepository<UserModel, Long> {
+public interface IUserRepository extends JpaRepository<UserModel, Long>, IUserRepositoryCustom {
+
+    /**
+     * Checks whether a user with the given normalized login name exists.
+     * @param loginName the login name, see {@link UserModel#normalizeLoginName(String)}.
+     * @return true if the login name is taken.
+     */
+    boolean existsByLoginName(String loginName);
+
+    /**
+     * Finds the views of all users, selecting only the columns they return.
+     * @return the views of all users.
+     */
+    @Transactional(readOnly = true)
+    @Query("select new com.mercadona.api.models.UserView(u.idUser, u.name, u.email, u.version) from UserModel u")
+    List<UserView> findAllViews();
 
     /**
-     * Finds a user by their username.
-     * @param username the username of the user.
-     * @return the user entity that matches the given username.
+     * Finds the users that come after the given ID, ordered by ID (keyset pagination).
+     * The seek uses the primary key, so its cost does not depend on how deep the page is.
+     * Prefixes must already have LIKE wildcards escaped with '!'.
+     * @param afterId     the ID of the last user of the previous page, 0 for the first page.
+     * @param namePrefix  the prefix the name must start with, or null to not filter by name.
+     * @param emailPrefix the prefix the email must start with, or null to not filter by email.
+     * @param limit       the maximum number of users to return.
+     * @return the views of the users of the page.
      */
-    UserModel findByName(String username);
+    @Transactional(readOnly = true)
+    @Query("select new com.mercadona.api.models.UserView(u.idUser, u.name, u.email, u.version) "
+            + "from UserModel u where u.idUser > :afterId "
+            + "and (:namePrefix is null or u.name like concat(:namePrefix, '%') escape '!') "
+            + "and (:emailPrefix is null or u.email like concat(:emailPrefix, '%') escape '!') "
+            + "order by u.idUser")
+    List<UserView> findPageAfter(@Param("afterId") long afterId, @Param("namePrefix") String namePrefix,
+                                 @Param("emailPrefix") String emailPrefix, Limit limit);
 }
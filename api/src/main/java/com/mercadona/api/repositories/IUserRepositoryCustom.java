@@ -0,0 +1,59 @@
+package com.mercadona.api.repositories;
+
+import com.mercadona.api.models.UserModel;
+import com.mercadona.api.models.UserUpdate;
+
+import java.util.Collection;
+import java.util.Optional;
+
+/**
+ * Custom operations of {@link IUserRepository}: the lookup by natural id, and the writes that keep
+ * the second-level cache consistent.
+ */
+public interface IUserRepositoryCustom {
+
+    /**
+     * Finds a user by their normalized login name, its natural id, through the second-level cache.
+     * @param loginName the login name, see {@link UserModel#normalizeLoginName(String)}.
+     * @return the user entity that matches the given login name, or null if none does.
+     */
+    UserModel findByLoginName(String loginName);
+
+    /**
+     * Finds a user by ID through the second-level cache. A user missing from the cache is read from the primary,
+     * never from a replica, so the cache only holds up-to-date rows.
+     * @param idUser the ID of the user.
+     * @return the user entity, or empty if it does not exist.
+     */
+    Optional<UserModel> findCachedById(Long idUser);
+
+    /**
+     * Finds only the version of a user: from the second-level cache if the user is there, or else with a query
+     * of that column alone. The version is read from the same source as {@link #findCachedById}, so it never
+     * trails the user that a read of the whole user returns.
+     * @param idUser the ID of the user.
+     * @return the version of the user, or empty if it does not exist.
+     */
+    Optional<Long> findVersionById(Long idUser);
+
+    /**
+     * Updates the given fields of a user with a single UPDATE statement, after reading its columns under a row
+     * lock, without loading the entity.
+     * Only the non-null fields are written; the version is always incremented, and the security version
+     * is incremented if the name changes.
+     * @param idUser           the ID of the user.
+     * @param name             the new name, or null to keep the current one.
+     * @param email            the new email, or null to keep the current one.
+     * @param expectedVersions the versions the user must have to be updated, or null to update any version.
+     * @return the previous name, the new security version and the updated user, or the reason the user was
+     * not updated: it does not exist, or it is not in an expected version.
+     */
+    UserUpdate updateById(Long idUser, String name, String email, Collection<Long> expectedVersions);
+
+    /**
+     * Deletes a user in a single DELETE statement. Unlike deleteById, the entity is not loaded first.
+     * @param idUser the ID of the user.
+     * @return 1 if the user was deleted, 0 if it does not exist.
+     */
+    int deleteUserById(Long idUser);
+}
@@ -0,0 +1,222 @@
+package com.mercadona.api.repositories;
+
+import com.mercadona.api.models.UserModel;
+import com.mercadona.api.models.UserUpdate;
+import com.mercadona.api.models.UserView;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Cache;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.springframework.core.Ordered;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Implementation of {@link IUserRepositoryCustom}.
+ * Updates and deletes are plain SQL statements: a Hibernate bulk statement would empty the whole second-level
+ * cache region of the users, so only the affected user is evicted here instead.
+ */
+public class IUserRepositoryCustomImpl implements IUserRepositoryCustom {
+
+    private static final String DELETE_SQL = "DELETE FROM users WHERE id_user = ?";
+    private static final String SELECT_FOR_UPDATE_SQL =
+            "SELECT name, email, security_version, version FROM users WHERE id_user = ? FOR UPDATE";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Constructor-based dependency injection.
+     *
+     * @param jdbcTemplate the template used to update and delete the users
+     */
+    public IUserRepositoryCustomImpl(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Loaded through the natural-id cache. Supports a transaction without starting one, so the lookup
+     * has a session during the security filters, which run before the open-in-view interceptor.
+     */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public UserModel findByLoginName(String loginName) {
+        return entityManager.unwrap(Session.class).bySimpleNaturalId(UserModel.class).load(loginName);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Supports a transaction without starting one: outside a transaction the connection is taken from the primary,
+     * and no read-only transaction is started that the routing would send to a replica. Inside a read-only
+     * transaction, which a replica serves, the rows read are not put in the cache.
+     */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Optional<UserModel> findCachedById(Long idUser) {
+        CacheMode cacheMode = TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+                ? CacheMode.GET : CacheMode.NORMAL;
+        return Optional.ofNullable(findWithCacheMode(idUser, cacheMode));
+    }
+
+    /**
+     * {@inheritDoc}
+     * Supports a transaction without starting one, as {@link #findCachedById}: outside a transaction the query
+     * runs on the primary, so a lagging replica cannot report a version the client already has.
+     */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public Optional<Long> findVersionById(Long idUser) {
+        if (secondLevelCache().containsEntity(UserModel.class, idUser)) {
+            return findCachedById(idUser).map(UserModel::getVersion);
+        }
+
+        return entityManager.createQuery("select u.version from UserModel u where u.idUser = :idUser", Long.class)
+                .setParameter("idUser", idUser)
+                .getResultStream()
+                .findFirst();
+    }
+
+    /**
+     * {@inheritDoc}
+     * The statement skips the entity callbacks, so the login name is set here. The persistence context is
+     * cleared afterward, as @Modifying(clearAutomatically = true) does, so later reads see the new row.
+     * The columns of the view are read first under a row lock, in the same transaction: they tell a missing
+     * user from a version mismatch, and with the values written they make up the updated user, so it is
+     * not read again.
+     */
+    @Override
+    @Transactional
+    public UserUpdate updateById(Long idUser, String name, String email, Collection<Long> expectedVersions) {
+        entityManager.flush();
+        CurrentRow current = jdbcTemplate.query(SELECT_FOR_UPDATE_SQL, rs -> rs.next()
+                ? new CurrentRow(rs.getString(1), rs.getString(2), rs.getInt(3), rs.getLong(4)) : null, idUser);
+        if (current == null) {
+            return UserUpdate.notApplied(UserUpdate.Status.NOT_FOUND);
+        }
+        if (expectedVersions != null && !expectedVersions.isEmpty() && !expectedVersions.contains(current.version())) {
+            return UserUpdate.notApplied(UserUpdate.Status.VERSION_MISMATCH);
+        }
+
+        StringBuilder sql = new StringBuilder("UPDATE users SET ");
+        List<Object> args = new ArrayList<>();
+        int securityVersion = current.securityVersion();
+        if (name != null) {
+            if (!name.equals(current.name())) {
+                securityVersion++;
+            }
+            sql.append("security_version = ?, name = ?, login_name = ?, ");
+            args.add(securityVersion);
+            args.add(name);
+            args.add(UserModel.normalizeLoginName(name));
+        }
+        if (email != null) {
+            sql.append("email = ?, ");
+            args.add(email);
+        }
+        // The row is locked, so the version read is still the current one
+        sql.append("version = ? WHERE id_user = ?");
+        args.add(current.version() + 1);
+        args.add(idUser);
+
+        jdbcTemplate.update(sql.toString(), args.toArray());
+        entityManager.clear();
+
+        // A new name frees the previous login name
+        evict(idUser, name != null);
+        UserView user = new UserView(idUser, name != null ? name : current.name(),
+                email != null ? email : current.email(), current.version() + 1);
+        return new UserUpdate(UserUpdate.Status.UPDATED, current.name(), securityVersion, user);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The persistence context is flushed before and cleared afterward, as with the updates.
+     */
+    @Override
+    @Transactional
+    public int deleteUserById(Long idUser) {
+        entityManager.flush();
+        int deleted = jdbcTemplate.update(DELETE_SQL, idUser);
+        entityManager.clear();
+
+        if (deleted > 0) {
+            evict(idUser, true);
+        }
+        return deleted;
+    }
+
+    // Helper Methods
+
+    /**
+     * Loads a user with the given cache mode, restoring the mode of the session afterward.
+     */
+    private UserModel findWithCacheMode(Long idUser, CacheMode cacheMode) {
+        Session session = entityManager.unwrap(Session.class);
+        CacheMode previous = session.getCacheMode();
+        session.setCacheMode(cacheMode);
+        try {
+            return session.find(UserModel.class, idUser);
+        } finally {
+            session.setCacheMode(previous);
+        }
+    }
+
+    private Cache secondLevelCache() {
+        return entityManager.getEntityManagerFactory().unwrap(SessionFactory.class).getCache();
+    }
+
+    /**
+     * Evicts a user from the second-level cache, now and again once the transaction commits and completes, so a
+     * read that runs in between cannot leave the previous row cached. The commit eviction runs before the
+     * after-commit listeners of the user change, which may read the user again.
+     *
+     * @param idUser     the ID of the user
+     * @param naturalIds whether to also evict the login names, as a name was freed
+     */
+    private void evict(Long idUser, boolean naturalIds) {
+        Cache cache = secondLevelCache();
+        Runnable eviction = () -> {
+            cache.evictEntityData(UserModel.class, idUser);
+            if (naturalIds) {
+                cache.evictNaturalIdData(UserModel.class);
+            }
+        };
+
+        eviction.run();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public int getOrder() {
+                return Ordered.HIGHEST_PRECEDENCE;
+            }
+
+            @Override
+            public void afterCommit() {
+                eviction.run();
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                eviction.run();
+            }
+        });
+    }
+
+    /**
+     * Columns of a user read under a row lock before it is updated.
+     */
+    private record CurrentRow(String name, String email, int securityVersion, long version) {
+    }
+}
@@ -0,0 +1,37 @@
+package com.mercadona.api.repositories;
+
+import com.mercadona.api.models.UserTokenRevocationModel;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Repository interface for managing {@link UserTokenRevocationModel} entities.
+ * The revocations are read and purged through the index on their expiration.
+ */
+@Repository
+public interface IUserTokenRevocationRepository extends JpaRepository<UserTokenRevocationModel, Long> {
+
+    /**
+     * Finds the revocations that have not expired yet.
+     * @param now the current time.
+     * @return the live revocations.
+     */
+    List<UserTokenRevocationModel> findByExpiresAtAfter(Instant now);
+
+    /**
+     * Deletes the expired revocations.
+     * @param now the current time.
+     * @return the number of deleted revocations.
+     */
+    @Modifying
+    @Transactional
+    @Query("delete from UserTokenRevocationModel r where r.expiresAt <= :now")
+    int deleteExpired(@Param("now") Instant now);
+}
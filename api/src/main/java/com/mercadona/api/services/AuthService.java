@@ -1,46 +1,106 @@
 package com.mercadona.api.services;
 
+import com.mercadona.api.config.JwtConfig;
+import com.mercadona.api.exceptions.InvalidRefreshTokenException;
+import com.mercadona.api.models.TokenResponse;
 import com.mercadona.api.models.UserModel;
+import com.mercadona.api.models.UserPrincipal;
+import com.mercadona.api.models.VerifiedToken;
+import com.mercadona.api.repositories.IUserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.stereotype.Service;
 
+import static com.mercadona.api.constants.ApiConstants.BEARER_TOKEN_AUTH_TYPE;
+
 /**
  * Class for login management.
+ * A login checks the password once and returns a short-lived access token with a refresh token;
+ * the refresh token is then exchanged for new pairs without hashing the password again.
  */
 @Service
 public class AuthService {
 
     private final AuthenticationManager authManager;
     private final JWTService jwtService;
-
+    private final RefreshTokenService refreshTokenService;
+    private final IUserRepository userRepository;
+    private final JwtConfig jwtConfig;
+    private final TokenRevocationList revocations;
 
     @Autowired
-    public AuthService(AuthenticationManager authManager, JWTService jwtService) {
+    public AuthService(AuthenticationManager authManager, JWTService jwtService,
+                       RefreshTokenService refreshTokenService, IUserRepository userRepository, JwtConfig jwtConfig,
+                       TokenRevocationList revocations) {
         this.authManager = authManager;
         this.jwtService = jwtService;
+        this.refreshTokenService = refreshTokenService;
+        this.userRepository = userRepository;
+        this.jwtConfig = jwtConfig;
+        this.revocations = revocations;
     }
 
     /**
-     * Verificación de usuario para iniciar sesión y generación de token JWT.
+     * Verificación de usuario para iniciar sesión y generación del par de tokens.
      *
      * @param userModel Datos del usuario (nombre y contraseña).
-     * @return Token JWT si la autenticación es exitosa.
+     * @return Token de acceso JWT y token de refresco.
      * @throws AuthenticationException Excepción si la autenticación falla.
      */
-    public String verify(UserModel userModel) throws AuthenticationException {
+    public TokenResponse verify(UserModel userModel) throws AuthenticationException {
 
         Authentication authentication = authManager.authenticate(
                 new UsernamePasswordAuthenticationToken(userModel.getName(), userModel.getPassword()));
 
-        if (authentication.isAuthenticated()) {
-            return jwtService.generateToken(userModel.getName());
+        if (!authentication.isAuthenticated()) {
+            throw new BadCredentialsException("User not authenticated");
         }
 
-        return null;
+        UserPrincipal principal = (UserPrincipal) authentication.getPrincipal();
+
+        // The token is issued to the stored name, not to the name as typed by the user
+        return tokens(principal, refreshTokenService.issue(principal.idUser()));
+    }
+
+    /**
+     * Renovación del par de tokens con un token de refresco, sin verificar la contraseña.
+     * El token de refresco usado queda invalidado y se devuelve uno nuevo.
+     *
+     * @param refreshToken Token de refresco.
+     * @return Nuevo token de acceso JWT y nuevo token de refresco.
+     * @throws InvalidRefreshTokenException Si el token no es válido, ha caducado o ya se usó.
+     */
+    public TokenResponse refresh(String refreshToken) throws InvalidRefreshTokenException {
+
+        RefreshTokenService.RotatedToken rotated = refreshTokenService.rotate(refreshToken);
+        UserModel user = userRepository.findCachedById(rotated.idUser())
+                .orElseThrow(() -> new InvalidRefreshTokenException("Unknown user"));
+
+        return tokens(UserPrincipal.from(user), rotated.refreshToken());
     }
 
+    /**
+     * Cierre de sesión: revoca el token de acceso hasta su caducidad y, si se indica,
+     * la familia del token de refresco.
+     *
+     * @param accessToken  Token de acceso JWT, ya verificado por JwtFilter.
+     * @param refreshToken Token de refresco, o null.
+     */
+    public void logout(String accessToken, String refreshToken) {
+
+        VerifiedToken token = jwtService.verify(accessToken);
+        revocations.revoke(token.jti(), token.expiresAt().getTime());
+        refreshTokenService.revoke(refreshToken);
+    }
+
+    // Helper Methods
+
+    private TokenResponse tokens(UserPrincipal principal, String refreshToken) {
+        return new TokenResponse(jwtService.generateToken(principal), refreshToken, BEARER_TOKEN_AUTH_TYPE.trim(),
+                jwtConfig.getAccessTokenTtl().toSeconds());
+    }
 }
@@ -1,57 +1,107 @@
 package com.mercadona.api.services;
 
+import com.mercadona.api.config.JwtConfig;
+import com.mercadona.api.models.UserPrincipal;
+import com.mercadona.api.models.VerifiedToken;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.io.Decoders;
-import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
-import javax.crypto.KeyGenerator;
-import javax.crypto.SecretKey;
-import java.security.NoSuchAlgorithmException;
-import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.function.Function;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
-import static com.mercadona.api.constants.ApiConstants.ERROR_CREATE_SECRET_KEY;
-import static com.mercadona.api.constants.ApiConstants.KEY_GENERATOR_ALGORITHM;
+import static com.mercadona.api.constants.ApiConstants.JWT_CLAIM_ROLES;
+import static com.mercadona.api.constants.ApiConstants.JWT_CLAIM_SECURITY_VERSION;
+import static com.mercadona.api.constants.ApiConstants.JWT_CLAIM_USER_ID;
+import static com.mercadona.api.constants.ApiConstants.JWT_GENERATE_TIMER;
+import static com.mercadona.api.constants.ApiConstants.JWT_PARSE_TIMER;
+import static com.mercadona.api.constants.ApiConstants.JWT_VERIFY_TIMER;
 
 /**
  * Service class responsible for generating, validating, and extracting information from JWT tokens.
- * It uses HMAC SHA-256 algorithm for token signing.
+ * It uses HMAC SHA-256 algorithm for token signing, with the current key of the {@link JwtKeyRing}, whose ID
+ * is written in the "kid" header so any node sharing the ring can verify the token.
+ * The parser is built once, as it is immutable and thread-safe, and locates the key of each token in the ring.
+ * Token generation, verification (cache included) and the actual parses are timed separately,
+ * so the share of requests served by the verified token cache is visible.
+ * Tokens issued to a principal also carry the user ID, roles and security version, so they can be
+ * authenticated from their claims alone.
+ * Every token has a random 64-bit ID ("jti" claim, in hexadecimal) so it can be revoked before it expires.
  */
 @Service
 public class JWTService {
 
-    private final String secretKey;
-
-    public JWTService() {
-        this.secretKey = generateSecretKey();
+    private final JwtKeyRing keyRing;
+    private final JwtParser parser;
+    private final VerifiedTokenCache tokenCache;
+    private final JwtConfig jwtConfig;
+    private final Timer generateTimer;
+    private final Timer verifyTimer;
+    private final Timer parseTimer;
+
+    public JWTService(VerifiedTokenCache tokenCache, JwtKeyRing keyRing, JwtConfig jwtConfig,
+                      MeterRegistry meterRegistry) {
+        this.tokenCache = tokenCache;
+        this.keyRing = keyRing;
+        this.jwtConfig = jwtConfig;
+        this.generateTimer = Timer.builder(JWT_GENERATE_TIMER).register(meterRegistry);
+        this.verifyTimer = Timer.builder(JWT_VERIFY_TIMER).register(meterRegistry);
+        this.parseTimer = Timer.builder(JWT_PARSE_TIMER).register(meterRegistry);
+        this.parser = Jwts.parser()
+                .keyLocator(keyRing)
+                .build();
     }
 
     /**
-     * Generates a JWT token for the given username.
-     * The token contains claims and is signed using the secret key.
+     * Generates a JWT access token for the given username.
+     * The token contains claims, is signed using the secret key and expires after the configured access token TTL.
      *
      * @param username the username for which the token is generated
      * @return the generated JWT token
      */
     public String generateToken(String username) {
 
+        return generateTimer.record(() -> buildToken(username, new HashMap<>()));
+    }
+
+    /**
+     * Generates a JWT access token for the given principal, embedding its user ID, roles and security version.
+     *
+     * @param principal the principal for which the token is generated
+     * @return the generated JWT token
+     */
+    public String generateToken(UserPrincipal principal) {
+
         Map<String, Object> claims = new HashMap<>();
+        claims.put(JWT_CLAIM_USER_ID, principal.idUser());
+        claims.put(JWT_CLAIM_ROLES, principal.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+        claims.put(JWT_CLAIM_SECURITY_VERSION, principal.securityVersion());
 
-        return Jwts.builder()
-                .claims()
-                .add(claims)
-                .subject(username)
-                .issuedAt(new Date(System.currentTimeMillis()))
-                .expiration(new Date(System.currentTimeMillis() + 60 * 60 * 30))
-                .and()
-                .signWith(getSigningKey())
-                .compact();
+        return generateTimer.record(() -> buildToken(principal.getUsername(), claims));
+    }
+
+    /**
+     * Parses and verifies the JWT token once, returning the claims needed for authentication.
+     * The signature and the expiration are checked by the parser, unless the token is already
+     * in the verified token cache.
+     *
+     * @param token the JWT token
+     * @return the verified token
+     * @throws JwtException if the token is malformed, expired or its signature is invalid
+     */
+    public VerifiedToken verify(String token) throws JwtException {
+
+        return verifyTimer.record(() -> tokenCache.get(token, this::parse));
     }
 
     /**
@@ -62,7 +112,7 @@ public class JWTService {
      */
     public String extractUserName(String token) {
 
-        return extractClaim(token, Claims::getSubject);
+        return verify(token).subject();
     }
 
     /**
@@ -74,91 +124,120 @@ public class JWTService {
      */
     public boolean validateToken(String token, UserDetails userDetails) {
 
-        final String userName = extractUserName(token);
-
-        return (userName.equals(userDetails.getUsername()) && !isTokenExpired(token));
+        return validateToken(verify(token), userDetails);
     }
 
-    // Helper Methods
-
     /**
-     * Extracts a specific claim from the JWT token using the provided claim resolver function.
+     * Validates an already verified token against the user details, without parsing it again.
+     * Tokens issued before the security version of the user increased are rejected.
      *
-     * @param <T>           the type of the claim
-     * @param token         the JWT token
-     * @param claimResolver the function to extract the claim
-     * @return the extracted claim
+     * @param token       the verified token
+     * @param userDetails the user details to compare with
+     * @return true if the token is valid, false otherwise
      */
-    private <T> T extractClaim(String token, Function<Claims, T> claimResolver) {
+    public boolean validateToken(VerifiedToken token, UserDetails userDetails) {
 
-        final Claims claims = extractAllClaims(token);
+        if (token.securityVersion() != null && userDetails instanceof UserPrincipal principal
+                && token.securityVersion() < principal.securityVersion()) {
+            return false;
+        }
 
-        return claimResolver.apply(claims);
+        return token.subject().equals(userDetails.getUsername()) && !token.isExpiredAt(System.currentTimeMillis());
     }
 
+    // Helper Methods
+
     /**
-     * Extracts all claims from the JWT token.
+     * Builds and signs the token.
      *
-     * @param token the JWT token
-     * @return the extracted claims
+     * @param username the username for which the token is generated
+     * @param claims   the additional claims of the token
+     * @return the generated JWT token
      */
-    private Claims extractAllClaims(String token) {
+    private String buildToken(String username, Map<String, Object> claims) {
 
-        return Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+        long now = System.currentTimeMillis();
+
+        return Jwts.builder()
+                .header()
+                .keyId(keyRing.signingKeyId())
+                .and()
+                .claims()
+                .add(claims)
+                .id(Long.toHexString(newTokenId()))
+                .subject(username)
+                .issuedAt(new Date(now))
+                .expiration(new Date(now + jwtConfig.getAccessTokenTtl().toMillis()))
+                .and()
+                .signWith(keyRing.signingKey())
+                .compact();
     }
 
     /**
-     * Checks if the JWT token has expired.
+     * Parses and verifies the JWT token, bypassing the cache.
      *
      * @param token the JWT token
-     * @return true if the token has expired, false otherwise
+     * @return the verified token
      */
-    private boolean isTokenExpired(String token) {
+    private VerifiedToken parse(String token) {
+
+        long start = System.nanoTime();
+        try {
+            final Claims claims = extractAllClaims(token);
+
+            List<?> roles = claims.get(JWT_CLAIM_ROLES, List.class);
 
-        return extractExpiration(token).before(new Date());
+            return new VerifiedToken(claims.getSubject(), claims.getExpiration(), claims.getIssuedAt(),
+                    claims.get(JWT_CLAIM_USER_ID, Long.class),
+                    roles == null ? List.of() : roles.stream().map(String::valueOf).toList(),
+                    claims.get(JWT_CLAIM_SECURITY_VERSION, Integer.class),
+                    parseTokenId(claims.getId()));
+        } finally {
+            parseTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
     }
 
     /**
-     * Extracts the expiration date from the JWT token.
+     * Generates a random token ID. Zero is reserved for tokens without ID.
      *
-     * @param token the JWT token
-     * @return the expiration date
+     * @return the token ID
      */
-    private Date extractExpiration(String token) {
+    private static long newTokenId() {
+
+        long jti;
+        do {
+            jti = ThreadLocalRandom.current().nextLong();
+        } while (jti == 0);
 
-        return extractClaim(token, Claims::getExpiration);
+        return jti;
     }
 
     /**
-     * Generates the secret key used for signing JWT tokens, using HmacSHA256 algorithm.
+     * Parses the hexadecimal token ID of the "jti" claim.
      *
-     * @return the Base64-encoded secret key
+     * @param jti the claim value
+     * @return the token ID, or 0 if the claim is absent or was not issued by this service
      */
-    private String generateSecretKey() {
+    private static long parseTokenId(String jti) {
 
+        if (jti == null) {
+            return 0;
+        }
         try {
-            KeyGenerator keyGen = KeyGenerator.getInstance(KEY_GENERATOR_ALGORITHM);
-            SecretKey sk = keyGen.generateKey();
-
-            return Base64.getEncoder().encodeToString(sk.getEncoded());
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(ERROR_CREATE_SECRET_KEY, e);
+            return Long.parseUnsignedLong(jti, 16);
+        } catch (NumberFormatException e) {
+            return 0;
         }
     }
 
     /**
-     * Decodes the Base64 secret key and returns a SecretKey object for token signing.
+     * Extracts all claims from the JWT token.
      *
-     * @return the SecretKey object
+     * @param token the JWT token
+     * @return the extracted claims
      */
-    private SecretKey getSigningKey() {
-
-        byte[] keyBytes = Decoders.BASE64.decode(secretKey);
+    private Claims extractAllClaims(String token) {
 
-        return Keys.hmacShaKeyFor(keyBytes);
+        return parser.parseSignedClaims(token).getPayload();
     }
 }
@@ -0,0 +1,377 @@
+package com.mercadona.api.services;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mercadona.api.config.JwtConfig;
+import io.jsonwebtoken.JwsHeader;
+import io.jsonwebtoken.LocatorAdapter;
+import io.jsonwebtoken.UnsupportedJwtException;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static com.mercadona.api.constants.ApiConstants.ERROR_CREATE_SECRET_KEY;
+import static com.mercadona.api.constants.ApiConstants.JWT_SIGNING_KEYS_METRIC;
+import static com.mercadona.api.constants.ApiConstants.KEY_GENERATOR_ALGORITHM;
+
+/**
+ * Ring of HMAC keys used to sign and verify JWT tokens, identified by the "kid" header of the tokens.
+ * The keys are stored in a JSON file that every node of the cluster reads, so a token issued by one node
+ * is accepted by the others and survives restarts. The file is reloaded periodically.
+ * A new key is published "overlap" before it starts signing, so every node has loaded it by then, and an
+ * old key is kept until the tokens it signed have expired. Whichever node notices first that the newest
+ * key is due for rotation appends the next one, under an exclusive lock on a sibling ".lock" file.
+ * Keys are parsed once per load, so locating the verification key of a token allocates nothing.
+ */
+@Slf4j
+@Component
+public class JwtKeyRing extends LocatorAdapter<Key> implements DisposableBean {
+
+    private static final int KEY_ID_BYTES = 9;
+    private static final TypeReference<List<StoredKey>> STORED_KEYS = new TypeReference<>() {
+    };
+
+    private final Path file;
+    private final Duration rotation;
+    private final Duration overlap;
+    private final Duration maxTokenTtl;
+    private final Clock clock;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final ScheduledExecutorService reloader;
+
+    // Replaced as a whole on every reload, so readers always see a consistent ring
+    private volatile Ring ring = new Ring(Map.of(), null, null);
+    private List<StoredKey> storedKeys = List.of();
+    private FileTime loadedModifiedTime;
+
+    /**
+     * Creates the key ring from the JWT configuration and registers its size gauge.
+     *
+     * @param jwtConfig     the JWT configuration
+     * @param meterRegistry the registry where the number of keys is published
+     */
+    @Autowired
+    public JwtKeyRing(JwtConfig jwtConfig, MeterRegistry meterRegistry) {
+        this(jwtConfig.getKeysFile() == null || jwtConfig.getKeysFile().isBlank() ? null : Path.of(jwtConfig.getKeysFile()),
+                jwtConfig.getKeysRotation(), jwtConfig.getKeysOverlap(), jwtConfig.getKeysReloadInterval(),
+                jwtConfig.getAccessTokenTtl());
+        Gauge.builder(JWT_SIGNING_KEYS_METRIC, this, keyRing -> keyRing.ring.keys().size())
+                .register(meterRegistry);
+    }
+
+    /**
+     * Creates the key ring, loading the key file or creating it with a first key.
+     *
+     * @param file           the key file, or null to keep the keys in memory only (they are lost on restart)
+     * @param rotation       the age at which a key is replaced, or zero to never rotate
+     * @param overlap        how long a new key is published before it starts signing
+     * @param reloadInterval how often the key file is reloaded and the rotation checked
+     * @param maxTokenTtl    the lifetime of the signed tokens, for which a replaced key is kept
+     */
+    public JwtKeyRing(Path file, Duration rotation, Duration overlap, Duration reloadInterval, Duration maxTokenTtl) {
+        this(file, rotation, overlap, reloadInterval, maxTokenTtl, Clock.systemUTC());
+    }
+
+    /**
+     * Creates the key ring with the given clock, which decides when keys are rotated, activated and pruned.
+     *
+     * @param file           the key file, or null to keep the keys in memory only (they are lost on restart)
+     * @param rotation       the age at which a key is replaced, or zero to never rotate
+     * @param overlap        how long a new key is published before it starts signing
+     * @param reloadInterval how often the key file is reloaded and the rotation checked
+     * @param maxTokenTtl    the lifetime of the signed tokens, for which a replaced key is kept
+     * @param clock          the clock
+     */
+    public JwtKeyRing(Path file, Duration rotation, Duration overlap, Duration reloadInterval, Duration maxTokenTtl,
+                      Clock clock) {
+        this.file = file;
+        this.rotation = rotation;
+        this.overlap = overlap;
+        this.maxTokenTtl = maxTokenTtl;
+        this.clock = clock;
+
+        if (file != null && !rotation.isZero() && overlap.compareTo(reloadInterval) <= 0) {
+            log.warn("jwt.keys.overlap ({}) should exceed jwt.keys.reload-interval ({}), or other nodes may reject "
+                    + "tokens signed with a new key until they reload it", overlap, reloadInterval);
+        }
+
+        refresh();
+
+        this.reloader = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory());
+        reloader.scheduleWithFixedDelay(this::refreshQuietly, reloadInterval.toMillis(), reloadInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns the ID of the key that currently signs the tokens.
+     *
+     * @return the key ID, written in the "kid" header
+     */
+    public String signingKeyId() {
+        return ring.signingKeyId();
+    }
+
+    /**
+     * Returns the key that currently signs the tokens.
+     *
+     * @return the signing key
+     */
+    public SecretKey signingKey() {
+        return ring.signingKey();
+    }
+
+    /**
+     * Locates the verification key of a signed token from its "kid" header.
+     *
+     * @param header the header of the token
+     * @return the pre-parsed key
+     * @throws UnsupportedJwtException if the token has no key ID or the key is not in the ring
+     */
+    @Override
+    protected Key locate(JwsHeader header) {
+
+        String kid = header.getKeyId();
+        SecretKey key = kid == null ? null : ring.keys().get(kid);
+        if (key == null) {
+            throw new UnsupportedJwtException("Unknown JWT signing key");
+        }
+
+        return key;
+    }
+
+    /**
+     * Stops the periodic reload.
+     */
+    @Override
+    public void destroy() {
+        reloader.shutdownNow();
+    }
+
+    // Helper Methods
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            log.warn("Cannot refresh the JWT key ring, keeping the current keys", e);
+        }
+    }
+
+    /**
+     * Reloads the key file if it changed, rotates and prunes the keys if needed, and publishes the ring.
+     * Called on creation and by the periodic reload.
+     */
+    synchronized void refresh() {
+
+        Instant now = clock.instant();
+        List<StoredKey> keys = file == null ? storedKeys : readIfModified();
+
+        List<StoredKey> maintained = maintained(keys, now);
+        if (!maintained.equals(keys)) {
+            keys = file == null ? maintained : rewriteLocked(now);
+        }
+
+        storedKeys = keys;
+        publish(keys, now);
+    }
+
+    /**
+     * Rotates and prunes the key file under the cross-node lock, re-reading it first in case
+     * another node has just done the same.
+     *
+     * @param now the current time
+     * @return the keys written to the file
+     */
+    private List<StoredKey> rewriteLocked(Instant now) {
+
+        Path lockFile = file.resolveSibling(file.getFileName() + ".lock");
+        try {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            try (FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                 FileLock ignored = lockChannel.lock()) {
+                List<StoredKey> current = read();
+                List<StoredKey> keys = maintained(current, now);
+                if (!keys.equals(current)) {
+                    write(keys);
+                    log.info("JWT key ring written to {} with {} keys", file, keys.size());
+                }
+                loadedModifiedTime = Files.getLastModifiedTime(file);
+
+                return keys;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot update the JWT key file " + file, e);
+        }
+    }
+
+    /**
+     * Returns the keys after pruning the replaced keys whose tokens have expired and adding the next key
+     * if the newest one is due for rotation.
+     *
+     * @param keys the current keys
+     * @param now  the current time
+     * @return the maintained keys, sorted by activation time
+     */
+    private List<StoredKey> maintained(List<StoredKey> keys, Instant now) {
+
+        List<StoredKey> sorted = new ArrayList<>(keys);
+        sorted.sort(Comparator.comparingLong(StoredKey::activatesAt));
+
+        // A key is dropped once the key that replaced it has signed for longer than the token lifetime
+        List<StoredKey> kept = new ArrayList<>(sorted.size() + 1);
+        for (int i = 0; i < sorted.size(); i++) {
+            boolean last = i == sorted.size() - 1;
+            if (last || !Instant.ofEpochSecond(sorted.get(i + 1).activatesAt()).plus(maxTokenTtl).isBefore(now)) {
+                kept.add(sorted.get(i));
+            }
+        }
+
+        if (kept.isEmpty()) {
+            // First start: nobody holds a token yet, the key can sign right away
+            kept.add(newKey(now));
+        } else if (!rotation.isZero()) {
+            Instant nextActivation = Instant.ofEpochSecond(kept.get(kept.size() - 1).activatesAt()).plus(rotation);
+            if (!now.isBefore(nextActivation.minus(overlap))) {
+                kept.add(newKey(nextActivation.isBefore(now.plus(overlap)) ? now.plus(overlap) : nextActivation));
+            }
+        }
+
+        return kept;
+    }
+
+    /**
+     * Parses the keys and selects the newest active one as signing key.
+     *
+     * @param keys the keys, sorted by activation time
+     * @param now  the current time
+     */
+    private void publish(List<StoredKey> keys, Instant now) {
+
+        Map<String, SecretKey> parsed = new HashMap<>(keys.size() * 2);
+        Ring previous = ring;
+        StoredKey signing = keys.get(0);
+        for (StoredKey key : keys) {
+            SecretKey existing = previous.keys().get(key.kid());
+            parsed.put(key.kid(), existing != null ? existing : Keys.hmacShaKeyFor(Base64.getDecoder().decode(key.secret())));
+            if (key.activatesAt() <= now.getEpochSecond()) {
+                signing = key;
+            }
+        }
+
+        if (!signing.kid().equals(previous.signingKeyId())) {
+            log.info("Signing JWT tokens with key {}", signing.kid());
+        }
+        ring = new Ring(Map.copyOf(parsed), signing.kid(), parsed.get(signing.kid()));
+    }
+
+    private List<StoredKey> readIfModified() {
+
+        try {
+            if (!Files.exists(file)) {
+                return List.of();
+            }
+            FileTime modifiedTime = Files.getLastModifiedTime(file);
+            if (modifiedTime.equals(loadedModifiedTime)) {
+                return storedKeys;
+            }
+            List<StoredKey> keys = read();
+            loadedModifiedTime = modifiedTime;
+
+            return keys;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot read the JWT key file " + file, e);
+        }
+    }
+
+    private List<StoredKey> read() throws IOException {
+
+        if (!Files.exists(file) || Files.size(file) == 0) {
+            return List.of();
+        }
+
+        return objectMapper.readValue(file.toFile(), STORED_KEYS);
+    }
+
+    /**
+     * Writes the keys to a temporary file, readable by the owner only, and atomically replaces the key file.
+     */
+    private void write(List<StoredKey> keys) throws IOException {
+
+        Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            objectMapper.writerWithDefaultPrettyPrinter().writeValue(tmp.toFile(), keys);
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private StoredKey newKey(Instant activatesAt) {
+
+        try {
+            byte[] kid = new byte[KEY_ID_BYTES];
+            secureRandom.nextBytes(kid);
+            SecretKey secretKey = KeyGenerator.getInstance(KEY_GENERATOR_ALGORITHM).generateKey();
+
+            return new StoredKey(Base64.getUrlEncoder().withoutPadding().encodeToString(kid),
+                    Base64.getEncoder().encodeToString(secretKey.getEncoded()), activatesAt.getEpochSecond());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ERROR_CREATE_SECRET_KEY, e);
+        }
+    }
+
+    private static CustomizableThreadFactory daemonThreadFactory() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("jwt-key-ring-");
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    /**
+     * Key as stored in the key file.
+     *
+     * @param kid         the key ID
+     * @param secret      the Base64-encoded HMAC secret
+     * @param activatesAt the time from which the key signs the tokens, in epoch seconds
+     */
+    private record StoredKey(String kid, String secret, long activatesAt) {
+    }
+
+    /**
+     * Immutable snapshot of the parsed keys and the current signing key.
+     */
+    private record Ring(Map<String, SecretKey> keys, String signingKeyId, SecretKey signingKey) {
+    }
+}
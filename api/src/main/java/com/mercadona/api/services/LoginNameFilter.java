@@ -0,0 +1,354 @@
+package com.mercadona.api.services;
+
+import com.mercadona.api.config.ExportConfig;
+import com.mercadona.api.config.LoginFilterConfig;
+import com.mercadona.api.config.RateLimiter;
+import com.mercadona.api.events.UserChangedEvent;
+import com.mercadona.api.models.UserModel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.PreparedStatement;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static com.mercadona.api.constants.ApiConstants.LOGIN_FILTER_METRIC_PREFIX;
+
+/**
+ * Bloom filter of the existing login names, used to reject lookups of unknown users without a database
+ * round trip. A negative answer is always right; a positive answer may be a false positive, at the
+ * configured rate, and then the database is queried as usual.
+ * <p>
+ * The filter is built from the users table once the application is ready, and answers "maybe" until then.
+ * New names are added as users are created or renamed on this instance. Users created on other instances
+ * are picked up by the periodic rebuild and, in between, by checking a rate-limited number of unknown names
+ * against the database before rejecting them. Bloom filters cannot forget, so deleted and
+ * renamed names stay as false positives: once they exceed the rebuild ratio, or the filter holds more
+ * names than it was sized for, it is rebuilt in the background from the table and swapped in.
+ * Size, memory, estimated false-positive rate, rejected lookups and names found only in the database
+ * are published to Micrometer.
+ */
+@Slf4j
+@Component
+public class LoginNameFilter implements DisposableBean {
+
+    private static final String COUNT_USERS_SQL = "SELECT COUNT(*) FROM users";
+    private static final String SELECT_LOGIN_NAMES_SQL = "SELECT login_name FROM users WHERE login_name IS NOT NULL";
+    private static final String COUNT_LOGIN_NAME_SQL = "SELECT COUNT(*) FROM users WHERE login_name = ?";
+    private static final String MISS_CHECK_KEY = "miss-check";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final LoginFilterConfig loginFilterConfig;
+    private final ExportConfig exportConfig;
+    private final Counter rejectedCounter;
+    private final Counter missedCounter;
+    private final RateLimiter missCheckLimiter;
+    private final ScheduledExecutorService refresher;
+    // Guards the filter swap against concurrent additions, so no name is added to a filter being replaced
+    private final Object swapLock = new Object();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private final AtomicLong staleNames = new AtomicLong();
+
+    private volatile BloomFilter filter;
+    private volatile BloomFilter nextFilter;
+
+    /**
+     * Constructor-based dependency injection.
+     *
+     * @param jdbcTemplate      the template used to read the login names
+     * @param loginFilterConfig the filter configuration
+     * @param exportConfig      the export configuration, whose fetch size is reused to stream the names
+     * @param meterRegistry     the registry where the filter metrics are published
+     */
+    public LoginNameFilter(JdbcTemplate jdbcTemplate, LoginFilterConfig loginFilterConfig, ExportConfig exportConfig,
+                           MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.loginFilterConfig = loginFilterConfig;
+        this.exportConfig = exportConfig;
+        this.rejectedCounter = Counter.builder(LOGIN_FILTER_METRIC_PREFIX + "rejected").register(meterRegistry);
+        this.missedCounter = Counter.builder(LOGIN_FILTER_METRIC_PREFIX + "missed").register(meterRegistry);
+        this.missCheckLimiter = new RateLimiter(loginFilterConfig.getMissChecksPerSecond() * 60,
+                loginFilterConfig.getMissChecksPerSecond(), 1);
+
+        Gauge.builder(LOGIN_FILTER_METRIC_PREFIX + "size", this, f -> f.filter == null ? 0 : f.filter.size())
+                .register(meterRegistry);
+        Gauge.builder(LOGIN_FILTER_METRIC_PREFIX + "memory", this, f -> f.filter == null ? 0 : f.filter.memoryBytes())
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder(LOGIN_FILTER_METRIC_PREFIX + "false-positive-rate", this,
+                        f -> f.filter == null ? 0 : f.filter.estimatedFalsePositiveRate())
+                .register(meterRegistry);
+
+        this.refresher = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory());
+        if (loginFilterConfig.isEnabled()) {
+            long intervalMillis = loginFilterConfig.getRefreshInterval().toMillis();
+            refresher.scheduleWithFixedDelay(this::rebuild, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Indicates whether a user with the given login name may exist.
+     * A name unknown to the filter is looked up in the database while the miss-check rate allows it, as it may
+     * have been created on another instance, and added to the filter if it exists.
+     * Counts the lookups rejected because the name is definitely unknown.
+     *
+     * @param loginName the normalized login name
+     * @return false if no user has that login name, true if it may exist
+     */
+    public boolean mightExist(String loginName) {
+
+        BloomFilter current = filter;
+        if (current == null || loginName == null || current.mightContain(loginName)) {
+            return true;
+        }
+        if (missCheckLimiter.tryAcquire(MISS_CHECK_KEY) == 0 && existsInDatabase(loginName)) {
+            missedCounter.increment();
+            add(loginName);
+            return true;
+        }
+
+        rejectedCounter.increment();
+        return false;
+    }
+
+    /**
+     * Builds the filter once the application is ready, after the login name migration has run.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (loginFilterConfig.isEnabled()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Adds the new name of a created or renamed user, and counts the names made stale by renames and deletions.
+     * Runs once the change is committed, so a rename that is rolled back is not added.
+     *
+     * @param event the user change event
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        if (event.currentName() != null) {
+            add(UserModel.normalizeLoginName(event.currentName()));
+        }
+        if (event.isDeleted() || event.previousName() != null
+                && !UserModel.normalizeLoginName(event.previousName()).equals(UserModel.normalizeLoginName(event.currentName()))) {
+            staleNames.incrementAndGet();
+        }
+
+        BloomFilter current = filter;
+        if (current != null && (staleNames.get() > current.size() * loginFilterConfig.getRebuildRatio()
+                || current.size() > current.capacity())) {
+            rebuildInBackground();
+        }
+    }
+
+    /**
+     * Stops the periodic rebuild.
+     */
+    @Override
+    public void destroy() {
+        refresher.shutdownNow();
+    }
+
+    // Helper Methods
+
+    private boolean existsInDatabase(String loginName) {
+        try {
+            return jdbcTemplate.queryForObject(COUNT_LOGIN_NAME_SQL, Long.class, loginName) > 0;
+        } catch (RuntimeException e) {
+            // The login then queries the database as usual, and fails there if it is unavailable
+            log.warn("Cannot check an unknown login name against the database", e);
+            return true;
+        }
+    }
+
+    /**
+     * Adds a name to the current filter and, while a rebuild scans the table, to the next one, under the lock
+     * of the swap: a name added while the new filter is swapped in cannot be lost.
+     */
+    private void add(String loginName) {
+        synchronized (swapLock) {
+            BloomFilter current = filter;
+            if (current != null) {
+                current.put(loginName);
+            }
+            BloomFilter next = nextFilter;
+            if (next != null) {
+                next.put(loginName);
+            }
+        }
+    }
+
+    private void rebuildInBackground() {
+        if (!rebuilding.get()) {
+            Thread.ofVirtual().name("login-filter-rebuild").start(this::rebuild);
+        }
+    }
+
+    /**
+     * Scans the login names into a new filter, sized for the current number of users, and swaps it in.
+     */
+    private void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            long users = jdbcTemplate.queryForObject(COUNT_USERS_SQL, Long.class);
+            // Room to double before the next rebuild
+            long capacity = Math.max(loginFilterConfig.getExpectedUsers(), users * 2);
+            BloomFilter next = new BloomFilter(capacity, loginFilterConfig.getFalsePositiveRate());
+            synchronized (swapLock) {
+                staleNames.set(0);
+                nextFilter = next;
+            }
+
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(SELECT_LOGIN_NAMES_SQL);
+                statement.setFetchSize(exportConfig.getFetchSize());
+                return statement;
+            }, resultSet -> {
+                next.put(resultSet.getString(1));
+            });
+
+            synchronized (swapLock) {
+                filter = next;
+                nextFilter = null;
+            }
+            log.info("Login name filter built: {} names, {} KiB, estimated false-positive rate {}",
+                    next.size(), next.memoryBytes() / 1024, String.format("%.4f", next.estimatedFalsePositiveRate()));
+        } catch (RuntimeException e) {
+            // Without a filter every lookup goes to the database, as before
+            log.error("Login name filter could not be built", e);
+        } finally {
+            synchronized (swapLock) {
+                nextFilter = null;
+            }
+            rebuilding.set(false);
+        }
+    }
+
+    private static CustomizableThreadFactory daemonThreadFactory() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("login-filter-refresh-");
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    /**
+     * Lock-free Bloom filter over strings, with bits in an {@link AtomicLongArray} and k indexes derived
+     * by double hashing from one 64-bit hash of the string.
+     */
+    static final class BloomFilter {
+
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashCount;
+        private final long capacity;
+        private final AtomicLong size = new AtomicLong();
+
+        /**
+         * Creates a filter with the optimal number of bits and hash functions for the given capacity.
+         *
+         * @param capacity          the expected number of names
+         * @param falsePositiveRate the false-positive rate wanted at that capacity
+         */
+        BloomFilter(long capacity, double falsePositiveRate) {
+            long optimalBits = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bits = new AtomicLongArray(Math.toIntExact(Math.max(1, (optimalBits + 63) / 64)));
+            this.bitCount = bits.length() * 64L;
+            this.hashCount = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+            this.capacity = capacity;
+        }
+
+        void put(String value) {
+            long hash = hash(value);
+            long h1 = mix(hash);
+            long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+            boolean changed = false;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long previous = bits.getAndAccumulate(word, mask, (current, m) -> current | m);
+                changed |= (previous & mask) == 0;
+            }
+            if (changed) {
+                size.incrementAndGet();
+            }
+        }
+
+        boolean mightContain(String value) {
+            long hash = hash(value);
+            long h1 = mix(hash);
+            long h2 = mix(hash ^ 0x9E3779B97F4A7C15L) | 1;
+            for (int i = 0; i < hashCount; i++) {
+                long bit = Long.remainderUnsigned(h1 + i * h2, bitCount);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Approximate number of distinct names added (names whose bits were all set already are not counted).
+         */
+        long size() {
+            return size.get();
+        }
+
+        long capacity() {
+            return capacity;
+        }
+
+        long memoryBytes() {
+            return bitCount / 8;
+        }
+
+        /**
+         * False-positive rate expected with the names added so far: (1 - e^(-kn/m))^k.
+         */
+        double estimatedFalsePositiveRate() {
+            return Math.pow(1 - Math.exp(-hashCount * (double) size() / bitCount), hashCount);
+        }
+
+        /**
+         * FNV-1a over the UTF-16 code units of the string.
+         */
+        private static long hash(String value) {
+            long hash = 0xCBF29CE484222325L;
+            for (int i = 0; i < value.length(); i++) {
+                hash = (hash ^ value.charAt(i)) * 0x100000001B3L;
+            }
+            return hash;
+        }
+
+        /**
+         * Finalizer of MurmurHash3, spreads the FNV hash over all 64 bits.
+         */
+        private static long mix(long hash) {
+            hash ^= hash >>> 33;
+            hash *= 0xFF51AFD7ED558CCDL;
+            hash ^= hash >>> 33;
+            hash *= 0xC4CEB93FE53A87CDL;
+            hash ^= hash >>> 33;
+            return hash;
+        }
+    }
+}
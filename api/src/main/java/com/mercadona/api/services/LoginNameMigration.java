@@ -0,0 +1,104 @@
+package com.mercadona.api.services;
+
+import com.mercadona.api.models.UserModel;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Backfills the login name of the users created before the "login_name" column existed.
+ * Runs once at startup, in keyset batches so it never locks the whole table, and is a no-op
+ * once every row has its login name. Rows whose normalized name collides with another user
+ * are left without login name and logged, so the duplicates can be renamed by hand.
+ */
+@Slf4j
+@Component
+public class LoginNameMigration implements ApplicationRunner {
+
+    private static final String SELECT_PENDING_SQL =
+            "SELECT id_user, name FROM users WHERE login_name IS NULL AND id_user > ? ORDER BY id_user LIMIT ?";
+    private static final String UPDATE_LOGIN_NAME_SQL = "UPDATE users SET login_name = ? WHERE id_user = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+
+    /**
+     * Constructor-based dependency injection.
+     *
+     * @param jdbcTemplate the template used to read and update the users
+     * @param batchSize    the number of users updated per batch
+     */
+    public LoginNameMigration(JdbcTemplate jdbcTemplate,
+                              @Value("${users.login-name-migration.batch-size}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+
+        long afterId = 0;
+        int migrated = 0;
+        int conflicts = 0;
+
+        List<PendingUser> batch;
+        do {
+            batch = jdbcTemplate.query(SELECT_PENDING_SQL,
+                    (rs, rowNum) -> new PendingUser(rs.getLong(1), rs.getString(2)), afterId, batchSize);
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            try {
+                updateBatch(batch);
+                migrated += batch.size();
+            } catch (DataIntegrityViolationException e) {
+                // A name of the batch collides: retry row by row to migrate everything else
+                for (PendingUser user : batch) {
+                    if (updateRow(user)) {
+                        migrated++;
+                    } else {
+                        conflicts++;
+                    }
+                }
+            }
+            afterId = batch.get(batch.size() - 1).idUser();
+        } while (batch.size() == batchSize);
+
+        if (migrated > 0 || conflicts > 0) {
+            log.info("Login names backfilled: {} migrated, {} left without login name because of duplicates",
+                    migrated, conflicts);
+        }
+    }
+
+    // Helper Methods
+
+    private void updateBatch(List<PendingUser> batch) {
+
+        jdbcTemplate.batchUpdate(UPDATE_LOGIN_NAME_SQL, batch, batch.size(), (statement, user) -> {
+            statement.setString(1, UserModel.normalizeLoginName(user.name()));
+            statement.setLong(2, user.idUser());
+        });
+    }
+
+    private boolean updateRow(PendingUser user) {
+
+        try {
+            jdbcTemplate.update(UPDATE_LOGIN_NAME_SQL, UserModel.normalizeLoginName(user.name()), user.idUser());
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            log.warn("User {} cannot log in until renamed: its name '{}' collides with another user",
+                    user.idUser(), user.name());
+            return false;
+        }
+    }
+
+    private record PendingUser(long idUser, String name) {
+    }
+}
@@ -1,34 +1,92 @@
 package com.mercadona.api.services;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.mercadona.api.config.UserDetailsConfig;
+import com.mercadona.api.events.UserChangedEvent;
 import com.mercadona.api.models.UserModel;
 import com.mercadona.api.models.UserPrincipal;
 import com.mercadona.api.repositories.IUserRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.mercadona.api.constants.ApiConstants.CACHE_HIT_RATIO_METRIC;
+import static com.mercadona.api.constants.ApiConstants.USER_DETAILS_CACHE_NAME;
+import static com.mercadona.api.constants.ApiConstants.USER_DETAILS_LOAD_TIMER;
 
 /**
  * Service responsible for loading user-specific data.
  * Implements {@link UserDetailsService} to fetch user details from the database
  * and adapt them to Spring Security's {@link UserDetails} interface.
+ * Principals used to authenticate JWT requests are cached without their password hash,
+ * and invalidated once the change of a {@link UserChangedEvent} is committed.
+ * Both lookups are timed under "users.details.load", tagged with the method.
+ * Names rejected by the {@link LoginNameFilter} are reported as not found without querying the database.
  */
 @Service
 public class MyUserDetailsService implements UserDetailsService {
 
     private final IUserRepository userRepository;
+    private final LoginNameFilter loginNameFilter;
+    private final Cache<String, UserPrincipal> principalCache;
+    // Names under which each user is cached, so a change evicts them without scanning the cache
+    private final Map<Long, Set<String>> cachedNamesById = new ConcurrentHashMap<>();
+    // Incremented by every invalidation, so a load that overlaps one is not kept
+    private final AtomicLong invalidations = new AtomicLong();
+    private final Timer loadUserTimer;
+    private final Timer loadPrincipalTimer;
 
     /**
      * Constructor-based dependency injection for IUserRepository.
-     * @param userRepository the user repository to interact with the database.
+     * @param userRepository    the user repository to interact with the database.
+     * @param loginNameFilter   the filter of existing login names.
+     * @param userDetailsConfig the configuration of the principal cache.
+     * @param meterRegistry     the registry where the cache statistics are published.
      */
-    public MyUserDetailsService(IUserRepository userRepository) {
+    public MyUserDetailsService(IUserRepository userRepository, LoginNameFilter loginNameFilter,
+                                UserDetailsConfig userDetailsConfig, MeterRegistry meterRegistry) {
         this.userRepository = userRepository;
+        this.loginNameFilter = loginNameFilter;
+        this.principalCache = Caffeine.newBuilder()
+                .maximumSize(userDetailsConfig.getCacheMaximumSize())
+                .expireAfterWrite(userDetailsConfig.getCacheTtl())
+                .recordStats()
+                .evictionListener((String name, UserPrincipal principal, RemovalCause cause) ->
+                        forgetCachedName(principal.idUser(), name))
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, principalCache, USER_DETAILS_CACHE_NAME);
+        Gauge.builder(CACHE_HIT_RATIO_METRIC, principalCache, cache -> cache.stats().hitRate())
+                .tag("cache", USER_DETAILS_CACHE_NAME)
+                .register(meterRegistry);
+        this.loadUserTimer = Timer.builder(USER_DETAILS_LOAD_TIMER)
+                .tag("method", "loadUserByUsername")
+                .register(meterRegistry);
+        this.loadPrincipalTimer = Timer.builder(USER_DETAILS_LOAD_TIMER)
+                .tag("method", "loadPrincipalByUsername")
+                .register(meterRegistry);
     }
 
     /**
      * Loads the user by username and maps it to a {@link UserDetails} implementation.
      * Throws {@link UsernameNotFoundException} if the user is not found.
+     * Always reads the database, as the returned details include the password hash needed to log in.
      *
      * @param username the username identifying the user whose data is required.
      * @return {@link UserDetails} containing the user data.
@@ -36,11 +94,113 @@ public class MyUserDetailsService implements UserDetailsService {
      */
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-        UserModel user = userRepository.findByName(username);
+        return loadUserTimer.record(() -> UserPrincipal.from(findUser(username)));
+    }
+
+    /**
+     * Loads the principal of an already authenticated user, without its password hash.
+     * Served from the cache, so the database is only read on a miss. A principal loaded while a user change
+     * was invalidated may have been read before that change was committed, so it is returned but not kept.
+     *
+     * @param username the username identifying the user whose data is required.
+     * @return {@link UserDetails} containing the user data, without credentials.
+     * @throws UsernameNotFoundException if no user is found with the provided username.
+     */
+    public UserDetails loadPrincipalByUsername(String username) throws UsernameNotFoundException {
+        return loadPrincipalTimer.record(() -> {
+            long seenInvalidations = invalidations.get();
+            boolean[] loaded = {false};
+            UserPrincipal cached = principalCache.get(username, name -> {
+                UserPrincipal principal = UserPrincipal.from(findUser(name)).withoutPassword();
+                rememberCachedName(principal.idUser(), name);
+                loaded[0] = true;
+                return principal;
+            });
+
+            if (loaded[0] && invalidations.get() != seenInvalidations
+                    && principalCache.asMap().remove(username, cached)) {
+                forgetCachedName(cached.idUser(), username);
+            }
+            return cached;
+        });
+    }
+
+    /**
+     * Returns the hit, miss and eviction statistics of the principal cache.
+     *
+     * @return the cache statistics.
+     */
+    public CacheStats principalCacheStats() {
+        return principalCache.stats();
+    }
+
+    /**
+     * Invalidates the cached principals of a user after it has been created, updated or deleted.
+     * Entries are removed by name, and by ID through the names each user is cached under, as the previous
+     * name is not always known. Nothing is cached yet for a created user.
+     * Runs once the change is committed, as a principal read before the commit would otherwise be cached again
+     * right after the invalidation; changes made outside a transaction are applied at once.
+     *
+     * @param event the user change event.
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        invalidations.incrementAndGet();
+        if (event.previousName() != null) {
+            principalCache.invalidate(event.previousName());
+        }
+        if (event.currentName() != null) {
+            principalCache.invalidate(event.currentName());
+        }
+        if (event.idUser() != null) {
+            Set<String> cachedNames = cachedNamesById.remove(event.idUser());
+            if (cachedNames != null) {
+                principalCache.invalidateAll(cachedNames);
+            }
+        }
+    }
+
+    /**
+     * Records that a user is cached under a name, atomically with the removals of {@link #forgetCachedName}.
+     *
+     * @param idUser the ID of the user.
+     * @param name   the name the principal is cached under.
+     */
+    private void rememberCachedName(Long idUser, String name) {
+        cachedNamesById.compute(idUser, (id, names) -> {
+            Set<String> cachedNames = names != null ? names : new HashSet<>();
+            cachedNames.add(name);
+            return cachedNames;
+        });
+    }
+
+    /**
+     * Forgets a name evicted from the cache by size or expiry.
+     *
+     * @param idUser the ID of the user.
+     * @param name   the evicted name.
+     */
+    private void forgetCachedName(Long idUser, String name) {
+        cachedNamesById.computeIfPresent(idUser, (id, names) -> {
+            names.remove(name);
+            return names.isEmpty() ? null : names;
+        });
+    }
+
+    /**
+     * Finds the user entity by username.
+     *
+     * @param username the username identifying the user.
+     * @return the user entity.
+     * @throws UsernameNotFoundException if no user is found with the provided username.
+     */
+    private UserModel findUser(String username) throws UsernameNotFoundException {
+        String loginName = UserModel.normalizeLoginName(username);
+        UserModel user = loginNameFilter.mightExist(loginName) ? userRepository.findByLoginName(loginName) : null;
         if (user == null) {
             throw new UsernameNotFoundException("User not found: " + username);
         }
 
-        return new UserPrincipal(user);
+        return user;
     }
 }
@@ -0,0 +1,181 @@
+package com.mercadona.api.services;
+
+import com.mercadona.api.config.JwtConfig;
+import com.mercadona.api.events.UserChangedEvent;
+import com.mercadona.api.exceptions.InvalidRefreshTokenException;
+import com.mercadona.api.models.RefreshTokenModel;
+import com.mercadona.api.repositories.IRefreshTokenRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.UUID;
+
+import static com.mercadona.api.constants.ApiConstants.TOKEN_DIGEST_ALGORITHM;
+
+/**
+ * Service that issues and rotates opaque refresh tokens.
+ * A refresh is one indexed lookup by digest and two small writes, with no password hashing.
+ * Every token can be used once: using it marks it as used and issues the next token of its family.
+ * If a used token is presented again, it was stolen or replayed, so the whole family is revoked
+ * and the legitimate client has to log in again.
+ */
+@Slf4j
+@Service
+public class RefreshTokenService {
+
+    private static final int TOKEN_BYTES = 32;
+
+    private final IRefreshTokenRepository refreshTokenRepository;
+    private final JwtConfig jwtConfig;
+    private final SecureRandom secureRandom = new SecureRandom();
+
+    /**
+     * Constructor-based dependency injection.
+     *
+     * @param refreshTokenRepository the refresh token repository
+     * @param jwtConfig              the JWT configuration, with the refresh token TTL
+     */
+    public RefreshTokenService(IRefreshTokenRepository refreshTokenRepository, JwtConfig jwtConfig) {
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.jwtConfig = jwtConfig;
+    }
+
+    /**
+     * Issues the first refresh token of a new family, after a successful login.
+     * Expired tokens of the user are purged at the same time.
+     *
+     * @param idUser the ID of the logged in user
+     * @return the refresh token
+     */
+    @Transactional
+    public String issue(Long idUser) {
+
+        refreshTokenRepository.deleteExpired(idUser, Instant.now());
+
+        return save(idUser, UUID.randomUUID().toString());
+    }
+
+    /**
+     * Exchanges a refresh token for the next one of its family.
+     * The transaction is committed even when the token is rejected, so a family revoked on reuse stays revoked.
+     *
+     * @param refreshToken the presented refresh token
+     * @return the ID of the token owner and the new refresh token
+     * @throws InvalidRefreshTokenException if the token is unknown, expired, revoked or already used
+     */
+    @Transactional(noRollbackFor = InvalidRefreshTokenException.class)
+    public RotatedToken rotate(String refreshToken) throws InvalidRefreshTokenException {
+
+        if (refreshToken == null || refreshToken.isEmpty()) {
+            throw new InvalidRefreshTokenException("Missing refresh token");
+        }
+
+        RefreshTokenModel token = refreshTokenRepository.findByTokenHash(digest(refreshToken))
+                .orElseThrow(() -> new InvalidRefreshTokenException("Unknown refresh token"));
+        Instant now = Instant.now();
+
+        if (token.isRevoked()) {
+            throw new InvalidRefreshTokenException("Revoked refresh token");
+        }
+        if (token.getExpiresAt().isBefore(now)) {
+            throw new InvalidRefreshTokenException("Expired refresh token");
+        }
+        if (token.getUsedAt() != null || refreshTokenRepository.markUsed(token.getIdRefreshToken(), now) == 0) {
+            log.warn("Refresh token reuse detected for user {}, revoking family {}", token.getIdUser(), token.getFamilyId());
+            refreshTokenRepository.revokeFamily(token.getFamilyId());
+            throw new InvalidRefreshTokenException("Refresh token reuse detected, please log in again");
+        }
+
+        return new RotatedToken(token.getIdUser(), save(token.getIdUser(), token.getFamilyId()));
+    }
+
+    /**
+     * Revokes the family of a refresh token, on logout. Unknown tokens are ignored.
+     *
+     * @param refreshToken the presented refresh token
+     */
+    @Transactional
+    public void revoke(String refreshToken) {
+
+        if (refreshToken == null || refreshToken.isEmpty()) {
+            return;
+        }
+
+        refreshTokenRepository.findByTokenHash(digest(refreshToken))
+                .ifPresent(token -> refreshTokenRepository.revokeFamily(token.getFamilyId()));
+    }
+
+    /**
+     * Deletes the refresh tokens of deleted users, and revokes every family of a user whose security version
+     * changed, so a stolen refresh token stops working after a rename or a credential change.
+     * A change that does not report the new security version is treated as a security change.
+     * Runs in its own transaction once the change is committed, so it also revokes the tokens rotated meanwhile.
+     *
+     * @param event the user change event
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    public void onUserChanged(UserChangedEvent event) {
+        if (event.idUser() == null) {
+            return;
+        }
+
+        if (event.isDeleted()) {
+            refreshTokenRepository.deleteByIdUser(event.idUser());
+        } else if (event.currentName() != null && (event.securityVersion() == null || event.securityVersion() > 0)) {
+            int revoked = refreshTokenRepository.revokeByIdUser(event.idUser());
+            if (revoked > 0) {
+                log.info("Security version of user {} changed, revoked {} refresh tokens", event.idUser(), revoked);
+            }
+        }
+    }
+
+    // Helper Methods
+
+    private String save(Long idUser, String familyId) {
+
+        byte[] bytes = new byte[TOKEN_BYTES];
+        secureRandom.nextBytes(bytes);
+        String refreshToken = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        RefreshTokenModel token = new RefreshTokenModel();
+        token.setTokenHash(digest(refreshToken));
+        token.setIdUser(idUser);
+        token.setFamilyId(familyId);
+        token.setExpiresAt(Instant.now().plus(jwtConfig.getRefreshTokenTtl()));
+        refreshTokenRepository.save(token);
+
+        return refreshToken;
+    }
+
+    private static String digest(String refreshToken) {
+
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance(TOKEN_DIGEST_ALGORITHM);
+
+            return HexFormat.of().formatHex(messageDigest.digest(refreshToken.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Result of a rotation.
+     *
+     * @param idUser       the ID of the token owner
+     * @param refreshToken the new refresh token
+     */
+    public record RotatedToken(Long idUser, String refreshToken) {
+    }
+}
@@ -0,0 +1,175 @@
+package com.mercadona.api.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mercadona.api.config.JwtConfig;
+import com.mercadona.api.events.UserChangedEvent;
+import com.mercadona.api.models.UserTokenRevocationModel;
+import com.mercadona.api.repositories.IUserTokenRevocationRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory view of the security versions that changed recently, used to authenticate access tokens
+ * from their claims alone. Only users whose name or password changed, or who were deleted, have an entry,
+ * so a lookup never reaches the database.
+ * Entries expire after the access token TTL: by then every token issued before the change has expired too.
+ * Changes made by other instances are not seen, so their staleness is bounded by the access token TTL.
+ * When a change does not report the new security version, every token issued before it is rejected instead.
+ * <p>
+ * Deletions are the exception: in claims-only mode they are also stored in the user_token_revocations table,
+ * in the transaction of the delete, and every instance reloads the table once ready and then periodically,
+ * so the tokens of a deleted user are rejected everywhere, restarts included, after one refresh interval.
+ */
+@Slf4j
+@Component
+public class SecurityVersionCache implements DisposableBean {
+
+    private static final int DELETED = Integer.MAX_VALUE;
+
+    private final IUserTokenRevocationRepository revocationRepository;
+    private final JwtConfig jwtConfig;
+    private final ScheduledExecutorService refresher;
+    private final Cache<Long, Integer> versions;
+    private final Cache<Long, Long> notBefore;
+
+    /**
+     * Creates the cache from the JWT configuration.
+     *
+     * @param jwtConfig            the JWT configuration
+     * @param revocationRepository the repository of the revocations of deleted users
+     */
+    public SecurityVersionCache(JwtConfig jwtConfig, IUserTokenRevocationRepository revocationRepository) {
+        this.revocationRepository = revocationRepository;
+        this.jwtConfig = jwtConfig;
+        this.refresher = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory());
+        this.versions = Caffeine.newBuilder()
+                .expireAfterWrite(jwtConfig.getAccessTokenTtl())
+                .build();
+        this.notBefore = Caffeine.newBuilder()
+                .expireAfterWrite(jwtConfig.getAccessTokenTtl())
+                .build();
+    }
+
+    /**
+     * Indicates whether a token issued with the given security version is still current.
+     *
+     * @param idUser          the ID of the user
+     * @param securityVersion the security version embedded in the token
+     * @param issuedAt        the time at which the token was issued
+     * @return false if the user was deleted or its security version may have increased since the token was issued
+     */
+    public boolean isCurrent(Long idUser, int securityVersion, Date issuedAt) {
+        Integer current = versions.getIfPresent(idUser);
+        if (current != null && securityVersion < current) {
+            return false;
+        }
+
+        // iat has second precision: a token issued in the same second as the change is still accepted
+        Long changedAt = notBefore.getIfPresent(idUser);
+        return changedAt == null || issuedAt.getTime() / 1000 >= changedAt;
+    }
+
+    /**
+     * Stores the revocation of every token of a deleted user, in the transaction of the caller.
+     * Does nothing unless the claims-only mode is enabled, as otherwise every token is checked against the user.
+     *
+     * @param idUser the ID of the deleted user
+     */
+    public void revokeDeleted(Long idUser) {
+        if (!jwtConfig.isClaimsOnly()) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        UserTokenRevocationModel revocation = new UserTokenRevocationModel();
+        revocation.setIdUser(idUser);
+        // Also rejects the tokens issued in the second of the deletion
+        revocation.setNotBefore(now / 1000 + 1);
+        revocation.setExpiresAt(Instant.ofEpochMilli(now).plus(jwtConfig.getAccessTokenTtl()));
+        revocationRepository.save(revocation);
+    }
+
+    /**
+     * Records the security version of a changed user, or marks it as deleted, once the change is committed,
+     * so a change that is rolled back does not reject any token.
+     *
+     * @param event the user change event
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        if (event.idUser() == null) {
+            return;
+        }
+
+        if (event.isDeleted()) {
+            versions.put(event.idUser(), DELETED);
+        } else if (event.currentName() == null) {
+            // Only the email changed: the tokens stay valid
+            return;
+        } else if (event.securityVersion() == null) {
+            notBefore.put(event.idUser(), System.currentTimeMillis() / 1000);
+        } else if (event.securityVersion() > 0) {
+            // Events are not ordered across threads, the highest version wins
+            versions.asMap().merge(event.idUser(), event.securityVersion(), Math::max);
+        }
+    }
+
+    /**
+     * Loads the stored revocations once the application is ready, and schedules their periodic reload.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!jwtConfig.isClaimsOnly()) {
+            return;
+        }
+
+        refresh();
+        long intervalMillis = jwtConfig.getClaimsOnlyRefreshInterval().toMillis();
+        refresher.scheduleWithFixedDelay(this::refresh, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the periodic reload.
+     */
+    @Override
+    public void destroy() {
+        refresher.shutdownNow();
+    }
+
+    // Helper Methods
+
+    /**
+     * Merges the live revocations of deleted users into the not-before times, and purges the expired ones.
+     */
+    private void refresh() {
+        try {
+            Instant now = Instant.now();
+            for (UserTokenRevocationModel revocation : revocationRepository.findByExpiresAtAfter(now)) {
+                notBefore.asMap().merge(revocation.getIdUser(), revocation.getNotBefore(), Math::max);
+            }
+            revocationRepository.deleteExpired(now);
+        } catch (RuntimeException e) {
+            // The next refresh retries; meanwhile the deletions already loaded are still enforced
+            log.warn("Cannot load the token revocations of deleted users", e);
+        }
+    }
+
+    private static CustomizableThreadFactory daemonThreadFactory() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("security-version-refresh-");
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+}
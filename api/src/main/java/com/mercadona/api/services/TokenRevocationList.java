@@ -0,0 +1,491 @@
+package com.mercadona.api.services;
+
+import com.mercadona.api.config.JwtConfig;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+
+import static com.mercadona.api.constants.ApiConstants.REVOKED_TOKENS_METRIC;
+
+/**
+ * Set of revoked access tokens, keyed by their 64-bit "jti" claim.
+ * Lookups probe an open-addressing table of primitive longs under an optimistic read, so they are O(1)
+ * and allocate nothing. Every revocation is also filed in a hashed timing wheel by the expiration of
+ * its token, and a background tick drops it from the set once the token has expired anyway.
+ * Revocations are appended to a local journal of fixed-size records, replayed and compacted on startup.
+ */
+@Slf4j
+@Component
+public class TokenRevocationList implements DisposableBean {
+
+    private static final int RECORD_BYTES = 2 * Long.BYTES;
+    private static final int INITIAL_CAPACITY = 1 << 10;
+    private static final int INITIAL_SLOT_CAPACITY = 4;
+    private static final int COMPACTION_MIN_RECORDS = 1 << 12;
+
+    private final StampedLock lock = new StampedLock();
+    private final long tickMillis;
+    private final Slot[] wheel;
+    private final Path journalPath;
+    private final ScheduledExecutorService ticker;
+
+    // Guarded by lock; table is also read under optimistic reads
+    private long[] table = new long[INITIAL_CAPACITY];
+    private int size;
+    private long processedTick;
+
+    // Guarded by the monitor of this object, so the journal I/O never holds the lock.
+    // The monitor is always taken before the lock, never while holding it
+    private FileChannel journal;
+    private long journalRecords;
+
+    /**
+     * Creates the revocation list from the JWT configuration and registers its size gauge.
+     *
+     * @param jwtConfig     the JWT configuration
+     * @param meterRegistry the registry where the number of revoked tokens is published
+     */
+    @Autowired
+    public TokenRevocationList(JwtConfig jwtConfig, MeterRegistry meterRegistry) {
+        this(jwtConfig.getRevocationTick(), jwtConfig.getAccessTokenTtl(),
+                jwtConfig.getRevocationJournal() == null || jwtConfig.getRevocationJournal().isBlank()
+                        ? null : Path.of(jwtConfig.getRevocationJournal()));
+        Gauge.builder(REVOKED_TOKENS_METRIC, this, TokenRevocationList::size)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Creates the revocation list, replaying the journal if there is one.
+     *
+     * @param tick        the granularity of the expiration of the revocations
+     * @param horizon     the usual lifetime of the tokens, which sizes the timing wheel
+     * @param journalPath the path of the journal, or null to keep the revocations in memory only
+     */
+    public TokenRevocationList(Duration tick, Duration horizon, Path journalPath) {
+        this.tickMillis = Math.max(1, tick.toMillis());
+        this.wheel = new Slot[(int) Math.min(1 << 20, horizon.toMillis() / tickMillis + 2)];
+        this.journalPath = journalPath;
+        this.processedTick = System.currentTimeMillis() / tickMillis;
+
+        if (journalPath != null) {
+            openJournal();
+        }
+
+        this.ticker = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory());
+        ticker.scheduleWithFixedDelay(this::expire, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Indicates whether the token with the given ID was revoked. Never blocks on revocations in progress
+     * unless the optimistic read overlaps one, and never allocates.
+     *
+     * @param jti the ID of the token, or 0 if the token has none
+     * @return true if the token was revoked
+     */
+    public boolean isRevoked(long jti) {
+
+        if (jti == 0) {
+            return false;
+        }
+
+        long stamp = lock.tryOptimisticRead();
+        boolean revoked = contains(table, jti);
+        if (!lock.validate(stamp)) {
+            stamp = lock.readLock();
+            try {
+                revoked = contains(table, jti);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        return revoked;
+    }
+
+    /**
+     * Revokes the token with the given ID until it expires.
+     * The revocation is written to the journal before it is applied, both under the monitor that compactions
+     * hold: a compaction sees either both or neither, so it can never drop a revocation from the journal.
+     *
+     * @param jti       the ID of the token
+     * @param expiresAt the expiration time of the token, in epoch milliseconds
+     * @return true if the token was revoked now, false if it had no ID, had expired or was already revoked
+     */
+    public boolean revoke(long jti, long expiresAt) {
+
+        if (jti == 0 || expiresAt <= System.currentTimeMillis() || isRevoked(jti)) {
+            return false;
+        }
+
+        synchronized (this) {
+            append(jti, expiresAt);
+
+            long stamp = lock.writeLock();
+            try {
+                return add(jti, expiresAt);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of revoked tokens that have not expired yet.
+     *
+     * @return the number of revoked tokens
+     */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Stops the tick and closes the journal.
+     */
+    @Override
+    public void destroy() {
+        ticker.shutdownNow();
+        synchronized (this) {
+            closeJournal();
+        }
+    }
+
+    // Helper Methods
+
+    /**
+     * Advances the timing wheel up to the current tick, dropping the revocations of expired tokens,
+     * and compacts the journal once most of its records are stale.
+     */
+    private void expire() {
+
+        long now = System.currentTimeMillis();
+        long currentTick = now / tickMillis;
+        int removed = 0;
+
+        // Nothing to expire: skip the write lock, which would fail the optimistic reads in flight.
+        // The read lock does not, and add() moves the wheel forward when the set stops being empty
+        long stamp = lock.readLock();
+        try {
+            if (size == 0) {
+                return;
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+
+        stamp = lock.writeLock();
+        try {
+            // After a long pause every slot is visited once, not once per missed tick
+            long firstTick = Math.max(processedTick + 1, currentTick - wheel.length + 1);
+            for (long tick = firstTick; tick <= currentTick; tick++) {
+                Slot slot = wheel[(int) (tick % wheel.length)];
+                if (slot != null) {
+                    removed += slot.removeExpired(now, this);
+                }
+            }
+            processedTick = currentTick;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+
+        if (removed > 0 && journalPath != null) {
+            compactJournalIfStale();
+        }
+    }
+
+    /**
+     * Adds a revocation to the set and to the timing wheel. Must be called under the write lock.
+     */
+    private boolean add(long jti, long expiresAt) {
+
+        if (contains(table, jti)) {
+            return false;
+        }
+        if (size + 1 > table.length / 2) {
+            table = rehash(table, table.length * 2);
+        }
+
+        // An empty wheel has nothing to expire up to now, so the tick need not visit those slots later
+        if (size == 0) {
+            processedTick = Math.max(processedTick, System.currentTimeMillis() / tickMillis - 1);
+        }
+        insert(table, jti);
+        size++;
+
+        // The first tick at or after the expiration, so the revocation is dropped in this round of the wheel
+        int slotIdx = (int) (((expiresAt + tickMillis - 1) / tickMillis) % wheel.length);
+        if (wheel[slotIdx] == null) {
+            wheel[slotIdx] = new Slot();
+        }
+        wheel[slotIdx].add(jti, expiresAt);
+
+        return true;
+    }
+
+    /**
+     * Removes a revocation from the set, shifting back the following entries of its probe sequence
+     * so that linear probing needs no tombstones. Must be called under the write lock.
+     */
+    private void remove(long jti) {
+
+        long[] keys = table;
+        int mask = keys.length - 1;
+        int idx = index(jti, mask);
+
+        while (keys[idx] != 0) {
+            if (keys[idx] == jti) {
+                int gap = idx;
+                int next = idx;
+                while (true) {
+                    next = (next + 1) & mask;
+                    long key = keys[next];
+                    if (key == 0) {
+                        break;
+                    }
+                    int home = index(key, mask);
+                    // The key can fill the gap unless its home slot lies cyclically in (gap, next]
+                    boolean homeBetween = gap <= next ? gap < home && home <= next : gap < home || home <= next;
+                    if (!homeBetween) {
+                        keys[gap] = key;
+                        gap = next;
+                    }
+                }
+                keys[gap] = 0;
+                size--;
+                return;
+            }
+            idx = (idx + 1) & mask;
+        }
+    }
+
+    private static boolean contains(long[] keys, long jti) {
+
+        int mask = keys.length - 1;
+        int idx = index(jti, mask);
+
+        // Bounded by the table length, so a concurrent change seen by an optimistic read cannot loop forever
+        for (int probes = 0; probes < keys.length; probes++) {
+            long key = keys[idx];
+            if (key == jti) {
+                return true;
+            }
+            if (key == 0) {
+                return false;
+            }
+            idx = (idx + 1) & mask;
+        }
+
+        return false;
+    }
+
+    private static void insert(long[] keys, long jti) {
+
+        int mask = keys.length - 1;
+        int idx = index(jti, mask);
+        while (keys[idx] != 0) {
+            idx = (idx + 1) & mask;
+        }
+        keys[idx] = jti;
+    }
+
+    private static long[] rehash(long[] keys, int capacity) {
+
+        long[] rehashed = new long[capacity];
+        for (long key : keys) {
+            if (key != 0) {
+                insert(rehashed, key);
+            }
+        }
+
+        return rehashed;
+    }
+
+    private static int index(long jti, int mask) {
+        // Fibonacci hashing, in case the IDs are not uniformly distributed
+        long hash = jti * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * Replays the live records of the journal, then rewrites it without the stale ones.
+     */
+    private void openJournal() {
+
+        long now = System.currentTimeMillis();
+        try {
+            if (Files.exists(journalPath)) {
+                ByteBuffer records = ByteBuffer.wrap(Files.readAllBytes(journalPath));
+                // A torn last record, from a crash in the middle of a write, is ignored
+                while (records.remaining() >= RECORD_BYTES) {
+                    long jti = records.getLong();
+                    long expiresAt = records.getLong();
+                    if (expiresAt > now) {
+                        add(jti, expiresAt);
+                    }
+                }
+            }
+            synchronized (this) {
+                rewriteJournal();
+            }
+            log.info("Loaded {} token revocations from {}", size, journalPath);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open the token revocation journal " + journalPath, e);
+        }
+    }
+
+    /**
+     * Appends a revocation record to the journal and forces it to disk.
+     */
+    private synchronized void append(long jti, long expiresAt) {
+
+        if (journal == null) {
+            return;
+        }
+
+        try {
+            ByteBuffer record = ByteBuffer.allocate(RECORD_BYTES).putLong(jti).putLong(expiresAt).flip();
+            while (record.hasRemaining()) {
+                journal.write(record);
+            }
+            journal.force(false);
+            journalRecords++;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot write the token revocation journal " + journalPath, e);
+        }
+    }
+
+    private synchronized void compactJournalIfStale() {
+
+        if (journal == null || journalRecords < COMPACTION_MIN_RECORDS || journalRecords < 2L * size) {
+            return;
+        }
+
+        try {
+            rewriteJournal();
+        } catch (IOException e) {
+            log.warn("Cannot compact the token revocation journal {}", journalPath, e);
+        }
+    }
+
+    /**
+     * Writes the live revocations to a temporary file and atomically replaces the journal with it.
+     * Must be called holding the monitor of this object.
+     */
+    private void rewriteJournal() throws IOException {
+
+        ByteBuffer records;
+        long stamp = lock.readLock();
+        try {
+            records = ByteBuffer.allocate(size * RECORD_BYTES);
+            for (Slot slot : wheel) {
+                if (slot != null) {
+                    slot.writeTo(records);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+        records.flip();
+
+        closeJournal();
+        Path parent = journalPath.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, journalPath.getFileName().toString(), ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            while (records.hasRemaining()) {
+                channel.write(records);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, journalPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        journal = FileChannel.open(journalPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        journalRecords = records.limit() / RECORD_BYTES;
+    }
+
+    private void closeJournal() {
+
+        if (journal == null) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.warn("Cannot close the token revocation journal {}", journalPath, e);
+        }
+        journal = null;
+    }
+
+    private static CustomizableThreadFactory daemonThreadFactory() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("token-revocation-");
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    /**
+     * Revocations of one slot of the timing wheel, as parallel arrays of IDs and expiration times.
+     * A slot holds every token expiring at the same tick modulo the wheel size, so it may also hold
+     * tokens of later rounds, which are kept until their own tick comes.
+     */
+    private static final class Slot {
+
+        private long[] ids = new long[INITIAL_SLOT_CAPACITY];
+        private long[] expirations = new long[INITIAL_SLOT_CAPACITY];
+        private int count;
+
+        private void add(long jti, long expiresAt) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+                expirations = Arrays.copyOf(expirations, count * 2);
+            }
+            ids[count] = jti;
+            expirations[count] = expiresAt;
+            count++;
+        }
+
+        private int removeExpired(long now, TokenRevocationList revocations) {
+            int kept = 0;
+            for (int i = 0; i < count; i++) {
+                if (expirations[i] <= now) {
+                    revocations.remove(ids[i]);
+                } else {
+                    ids[kept] = ids[i];
+                    expirations[kept] = expirations[i];
+                    kept++;
+                }
+            }
+            int removed = count - kept;
+            count = kept;
+            return removed;
+        }
+
+        private void writeTo(ByteBuffer records) {
+            for (int i = 0; i < count; i++) {
+                records.putLong(ids[i]).putLong(expirations[i]);
+            }
+        }
+    }
+}
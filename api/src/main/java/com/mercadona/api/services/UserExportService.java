@@ -0,0 +1,75 @@
+package com.mercadona.api.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mercadona.api.config.ExportConfig;
+import com.mercadona.api.models.UserView;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Service that exports the whole users table as NDJSON (one JSON document per line).
+ * Users are read through a server-side cursor as views, which never enter the persistence context,
+ * so memory use does not depend on the size of the table.
+ */
+@Service
+public class UserExportService {
+
+    private static final String EXPORT_QUERY = "select new com.mercadona.api.models.UserView(u.idUser, u.name, "
+            + "u.email, u.version) from UserModel u order by u.idUser";
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    private final ObjectWriter userWriter;
+    private final ExportConfig exportConfig;
+
+    /**
+     * Constructor-based dependency injection.
+     *
+     * @param objectMapper the application object mapper, so the export matches the API representation
+     * @param exportConfig the export configuration
+     */
+    public UserExportService(ObjectMapper objectMapper, ExportConfig exportConfig) {
+        // The output stream is flushed by the container buffer, not after every user
+        this.userWriter = objectMapper.writerFor(UserView.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.exportConfig = exportConfig;
+    }
+
+    /**
+     * Writes every user to the output stream, one JSON document per line, ordered by ID.
+     *
+     * @param outputStream the stream to write to, it is not closed
+     * @throws IOException if writing to the stream fails
+     */
+    @Transactional(readOnly = true)
+    public void exportUsers(OutputStream outputStream) throws IOException {
+
+        try (Stream<UserView> users = entityManager.createQuery(EXPORT_QUERY, UserView.class)
+                .setHint(HibernateHints.HINT_FETCH_SIZE, exportConfig.getFetchSize())
+                .getResultStream();
+             JsonGenerator generator = userWriter.createGenerator(outputStream)) {
+
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Lines are terminated explicitly, instead of separating root values with a space
+            generator.setRootValueSeparator(null);
+
+            Iterator<UserView> iterator = users.iterator();
+            while (iterator.hasNext()) {
+                userWriter.writeValue(generator, iterator.next());
+                generator.writeRaw('\n');
+            }
+        }
+    }
+}
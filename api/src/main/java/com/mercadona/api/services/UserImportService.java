@@ -0,0 +1,377 @@
+package com.mercadona.api.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.mercadona.api.config.BoundedPasswordEncoder;
+import com.mercadona.api.config.ImportConfig;
+import com.mercadona.api.events.UserChangedEvent;
+import com.mercadona.api.models.ImportReport;
+import com.mercadona.api.models.ImportRowResult;
+import com.mercadona.api.models.UserModel;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static com.mercadona.api.constants.ApiConstants.TEXT_CSV_VALUE;
+
+/**
+ * Service that imports users in bulk from a CSV, JSON array or NDJSON document.
+ * Rows are processed in chunks: passwords are hashed in parallel on the hashing pool, and every chunk
+ * is inserted with a single JDBC batch in its own transaction, so a chunk is either fully
+ * imported or fully rejected.
+ */
+@Service
+public class UserImportService {
+
+    private static final String INSERT_USER_SQL = "INSERT INTO users (name, login_name, password, email) VALUES (?, ?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final BoundedPasswordEncoder passwordEncoder;
+    private final ApplicationEventPublisher eventPublisher;
+    private final ObjectReader userReader;
+    private final ImportConfig importConfig;
+    private final Validator validator;
+
+    /**
+     * Constructor-based dependency injection.
+     *
+     * @param jdbcTemplate        the template used to run the batched inserts
+     * @param transactionTemplate the template that wraps every chunk in a transaction
+     * @param passwordEncoder     the encoder used to hash the passwords
+     * @param eventPublisher      the publisher of the user change events
+     * @param objectMapper        the application object mapper, used to read JSON rows
+     * @param importConfig        the import configuration
+     * @param validator           the validator of the {@link UserModel} constraints
+     */
+    public UserImportService(JdbcTemplate jdbcTemplate, TransactionTemplate transactionTemplate,
+                             BoundedPasswordEncoder passwordEncoder, ApplicationEventPublisher eventPublisher,
+                             ObjectMapper objectMapper, ImportConfig importConfig, Validator validator) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.passwordEncoder = passwordEncoder;
+        this.eventPublisher = eventPublisher;
+        this.userReader = objectMapper.readerFor(UserModel.class);
+        this.importConfig = importConfig;
+        this.validator = validator;
+    }
+
+    /**
+     * Imports the users of the given document.
+     * CSV documents need a header row naming the "name", "email" and "password" columns.
+     * JSON documents can either be an array of users or one user per line (NDJSON).
+     *
+     * @param contentType the media type of the document
+     * @param inputStream the document
+     * @return the per-row report of the import
+     * @throws IOException if the document cannot be read
+     */
+    public ImportReport importUsers(String contentType, InputStream inputStream) throws IOException {
+
+        Iterator<UserModel> users = contentType != null && contentType.toLowerCase(Locale.ROOT).startsWith(TEXT_CSV_VALUE)
+                ? new CsvUserIterator(new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8)))
+                : readJson(inputStream);
+
+        List<ImportRowResult> results = new ArrayList<>();
+        Set<String> seenEmails = new HashSet<>();
+        Set<String> seenLoginNames = new HashSet<>();
+        List<ImportRow> chunk = new ArrayList<>(importConfig.getBatchSize());
+        int rowNumber = 0;
+
+        while (hasNext(users)) {
+            ImportRow row = new ImportRow(++rowNumber, next(users));
+            row.error = validate(row.user, seenEmails, seenLoginNames);
+            chunk.add(row);
+
+            if (chunk.size() == importConfig.getBatchSize()) {
+                importChunk(chunk, results);
+                chunk.clear();
+            }
+        }
+        importChunk(chunk, results);
+
+        int imported = (int) results.stream().filter(ImportRowResult::isImported).count();
+
+        return new ImportReport(results.size(), imported, results.size() - imported, results);
+    }
+
+    // Helper Methods
+
+    /**
+     * Hashes and inserts the valid rows of a chunk in one transaction, then records every row result.
+     *
+     * @param chunk   the rows of the chunk
+     * @param results the list where the row results are appended
+     */
+    private void importChunk(List<ImportRow> chunk, List<ImportRowResult> results) {
+
+        List<ImportRow> validRows = chunk.stream().filter(row -> row.error == null).toList();
+
+        // bcrypt is CPU bound: the chunk is hashed on the hashing pool, using all its threads, before touching the database
+        List<String> hashes = passwordEncoder.encodeAll(validRows.stream().map(row -> row.user.getPassword()).toList());
+        for (int i = 0; i < validRows.size(); i++) {
+            validRows.get(i).passwordHash = hashes.get(i);
+        }
+
+        if (!validRows.isEmpty()) {
+            try {
+                transactionTemplate.executeWithoutResult(status -> insertBatch(validRows));
+                validRows.forEach(row -> eventPublisher.publishEvent(
+                        new UserChangedEvent(row.idUser, null, row.user.getName(), row.user.getEmail(), 0)));
+            } catch (DataAccessException e) {
+                String error = e instanceof DataIntegrityViolationException
+                        ? "Chunk rolled back: a row of the chunk violates a database constraint (duplicate name or email?)"
+                        : "Chunk rolled back: database error";
+                validRows.forEach(row -> {
+                    row.idUser = null;
+                    row.error = error;
+                });
+            }
+        }
+
+        chunk.forEach(row -> results.add(new ImportRowResult(row.number, row.idUser, row.error)));
+    }
+
+    /**
+     * Inserts the rows with a single JDBC batch and reads back the generated IDs.
+     *
+     * @param rows the rows to insert, already validated and hashed
+     */
+    private void insertBatch(List<ImportRow> rows) {
+
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(INSERT_USER_SQL, Statement.RETURN_GENERATED_KEYS)) {
+                for (ImportRow row : rows) {
+                    statement.setString(1, row.user.getName());
+                    statement.setString(2, UserModel.normalizeLoginName(row.user.getName()));
+                    statement.setString(3, row.passwordHash);
+                    statement.setString(4, row.user.getEmail());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+
+                try (ResultSet keys = statement.getGeneratedKeys()) {
+                    for (int i = 0; i < rows.size() && keys.next(); i++) {
+                        rows.get(i).idUser = keys.getLong(1);
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Validates a row with the {@link UserModel} constraints, as a registration does, and rejects
+     * the names and emails already seen in the document.
+     *
+     * @param user           the user read from the row
+     * @param seenEmails     the emails of the previous rows, to reject duplicates within the document
+     * @param seenLoginNames the login names of the previous rows, to reject duplicates within the document
+     * @return the validation error, or null if the row is valid
+     */
+    private String validate(UserModel user, Set<String> seenEmails, Set<String> seenLoginNames) {
+
+        // @Size accepts a null password, but there would be nothing to hash
+        if (user.getPassword() == null) {
+            return "Password must be at least 8 characters long";
+        }
+        String violations = validator.validate(user).stream()
+                .map(ConstraintViolation::getMessage)
+                .sorted()
+                .collect(Collectors.joining("; "));
+        if (!violations.isEmpty()) {
+            return violations;
+        }
+        if (!seenEmails.add(user.getEmail())) {
+            return "Duplicate email in import";
+        }
+        if (!seenLoginNames.add(UserModel.normalizeLoginName(user.getName()))) {
+            return "Duplicate name in import";
+        }
+
+        return null;
+    }
+
+    /**
+     * Opens a streaming reader over a JSON array or a sequence of JSON documents.
+     *
+     * @param inputStream the document
+     * @return the iterator over the users of the document
+     * @throws IOException if the document cannot be read
+     */
+    private Iterator<UserModel> readJson(InputStream inputStream) throws IOException {
+
+        return userReader.readValues(inputStream);
+    }
+
+    /**
+     * Advances the document iterator, turning malformed documents into a 400 response.
+     *
+     * @param users the document iterator
+     * @return true if there is another row
+     */
+    private static boolean hasNext(Iterator<UserModel> users) {
+
+        try {
+            return users.hasNext();
+        } catch (RuntimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Malformed import document", e);
+        }
+    }
+
+    /**
+     * Reads the next row of the document, turning malformed rows into a 400 response.
+     *
+     * @param users the document iterator
+     * @return the user of the row
+     */
+    private static UserModel next(Iterator<UserModel> users) {
+
+        try {
+            return users.next();
+        } catch (RuntimeException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Malformed import document", e);
+        }
+    }
+
+    /**
+     * Mutable state of one row while its chunk is processed.
+     */
+    private static final class ImportRow {
+
+        private final int number;
+        private final UserModel user;
+        private String error;
+        private String passwordHash;
+        private Long idUser;
+
+        private ImportRow(int number, UserModel user) {
+            this.number = number;
+            this.user = user;
+        }
+    }
+
+    /**
+     * Iterates over the rows of a CSV document whose first line is a header.
+     * Fields may be double-quoted, with "" as an escaped quote; quoted line breaks are not supported.
+     */
+    private static final class CsvUserIterator implements Iterator<UserModel> {
+
+        private final BufferedReader reader;
+        private final int nameIdx;
+        private final int emailIdx;
+        private final int passwordIdx;
+        private String nextLine;
+
+        private CsvUserIterator(BufferedReader reader) throws IOException {
+            this.reader = reader;
+
+            String header = reader.readLine();
+            List<String> columns = header == null ? List.of() : parseLine(header).stream()
+                    .map(column -> column.trim().toLowerCase(Locale.ROOT))
+                    .toList();
+            this.nameIdx = columns.indexOf("name");
+            this.emailIdx = columns.indexOf("email");
+            this.passwordIdx = columns.indexOf("password");
+            if (nameIdx < 0 || emailIdx < 0 || passwordIdx < 0) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "CSV header must contain the name, email and password columns");
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                while (nextLine == null) {
+                    String line = reader.readLine();
+                    if (line == null) {
+                        return false;
+                    }
+                    if (!line.isBlank()) {
+                        nextLine = line;
+                    }
+                }
+                return true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public UserModel next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            List<String> fields = parseLine(nextLine);
+            nextLine = null;
+
+            UserModel user = new UserModel();
+            user.setName(field(fields, nameIdx));
+            user.setEmail(field(fields, emailIdx));
+            user.setPassword(field(fields, passwordIdx));
+
+            return user;
+        }
+
+        private static String field(List<String> fields, int idx) {
+            return idx < fields.size() ? fields.get(idx) : null;
+        }
+
+        private static List<String> parseLine(String line) {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+
+            for (int i = 0; i < line.length(); i++) {
+                char c = line.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            fields.add(field.toString());
+
+            return fields;
+        }
+    }
+}
@@ -0,0 +1,621 @@
+package com.mercadona.api.services;
+
+import com.mercadona.api.config.ExportConfig;
+import com.mercadona.api.config.SearchConfig;
+import com.mercadona.api.events.UserChangedEvent;
+import com.mercadona.api.models.UserMatch;
+import com.mercadona.api.models.UserModel;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static com.mercadona.api.constants.ApiConstants.USER_SEARCH_METRIC_PREFIX;
+
+/**
+ * In-memory n-gram index over the normalized names and emails of the users, used to answer typeahead
+ * searches without querying the database.
+ * <p>
+ * Every name and email is indexed by its trigrams and by the first one and two characters of each word,
+ * so a query of three or more characters matches anywhere in the text, and a shorter one matches the start
+ * of a word. A search reads the postings of the rarest gram of the query and checks each candidate against
+ * its text, keeping the first matches of each rank: name prefix, word of the name, email prefix and any
+ * other match. It stops as soon as it has enough name prefix matches, or enough matches once it has checked
+ * the maximum number of candidates, so queries that match most users return the best among the first ones.
+ * Postings are stored as variable-length deltas, one or two bytes per entry for most grams.
+ * <p>
+ * The index is built from the users table once the application is ready, and updated with every change made
+ * on this instance. Changes made on other instances are picked up by a periodic rebuild. Postings are never
+ * removed: those left by renamed and deleted users are skipped when the candidates are checked, and once they
+ * exceed the rebuild ratio the index is rebuilt in the background and swapped in.
+ * Tables with more users than the configured maximum are not indexed, which bounds the memory used.
+ * Size and estimated memory are published to Micrometer.
+ */
+@Slf4j
+@Component
+public class UserSearchIndex implements DisposableBean {
+
+    private static final String COUNT_USERS_SQL = "SELECT COUNT(*) FROM users";
+    private static final String SELECT_USERS_SQL = "SELECT id_user, name, email FROM users";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SearchConfig searchConfig;
+    private final ExportConfig exportConfig;
+    private final ScheduledExecutorService refresher;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    private volatile Index index;
+    private volatile Index nextIndex;
+
+    /**
+     * Constructor-based dependency injection.
+     *
+     * @param jdbcTemplate  the template used to read the users
+     * @param searchConfig  the search configuration
+     * @param exportConfig  the export configuration, whose fetch size is reused to stream the users
+     * @param meterRegistry the registry where the index metrics are published
+     */
+    public UserSearchIndex(JdbcTemplate jdbcTemplate, SearchConfig searchConfig, ExportConfig exportConfig,
+                           MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.searchConfig = searchConfig;
+        this.exportConfig = exportConfig;
+
+        Gauge.builder(USER_SEARCH_METRIC_PREFIX + "size", this, i -> i.index == null ? 0 : i.index.size())
+                .register(meterRegistry);
+        Gauge.builder(USER_SEARCH_METRIC_PREFIX + "memory", this, i -> i.index == null ? 0 : i.index.memoryBytes())
+                .baseUnit("bytes")
+                .register(meterRegistry);
+
+        this.refresher = Executors.newSingleThreadScheduledExecutor(daemonThreadFactory());
+        if (searchConfig.isEnabled()) {
+            long intervalMillis = searchConfig.getRefreshInterval().toMillis();
+            refresher.scheduleWithFixedDelay(this::rebuild, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Indicates whether the index is built and can answer searches.
+     *
+     * @return false while the index is being built for the first time, or if it is disabled or too large
+     */
+    public boolean isReady() {
+        return index != null;
+    }
+
+    /**
+     * Finds the users whose name or email match the query, best matches first.
+     *
+     * @param query the text typed by the user, it is normalized like the login names
+     * @param limit the maximum number of matches to return
+     * @return the matches, empty if the index is not ready
+     */
+    public List<UserMatch> search(String query, int limit) {
+        Index current = index;
+        String normalized = UserModel.normalizeLoginName(query);
+        if (current == null || normalized == null || normalized.isEmpty() || limit < 1) {
+            return List.of();
+        }
+
+        return current.search(normalized, limit, searchConfig.getMaxCandidates());
+    }
+
+    /**
+     * Builds the index once the application is ready, after the login name migration has run.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (searchConfig.isEnabled()) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Applies a user change to the index once it is committed, and rebuilds it when too many postings are stale.
+     *
+     * @param event the user change event
+     */
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT, fallbackExecution = true)
+    public void onUserChanged(UserChangedEvent event) {
+        if (event.idUser() == null) {
+            return;
+        }
+
+        Index current = index;
+        apply(current, event);
+        // Changes made while a rebuild scans the table must not be lost when the new index is swapped in
+        apply(nextIndex, event);
+
+        if (current != null && current.size() > searchConfig.getMaxUsers()) {
+            log.warn("User search index dropped: more than {} users", searchConfig.getMaxUsers());
+            index = null;
+        } else if (current != null && current.staleRatio() > searchConfig.getRebuildRatio()) {
+            rebuildInBackground();
+        }
+    }
+
+    /**
+     * Stops the periodic rebuild.
+     */
+    @Override
+    public void destroy() {
+        refresher.shutdownNow();
+    }
+
+    // Helper Methods
+
+    private static void apply(Index target, UserChangedEvent event) {
+        if (target == null) {
+            return;
+        }
+        if (event.isDeleted()) {
+            target.remove(event.idUser());
+        } else {
+            target.put(event.idUser(), event.currentName(), event.currentEmail(), false);
+        }
+    }
+
+    private void rebuildInBackground() {
+        if (!rebuilding.get()) {
+            Thread.ofVirtual().name("user-search-rebuild").start(this::rebuild);
+        }
+    }
+
+    /**
+     * Scans the users into a new index and swaps it in.
+     */
+    private void rebuild() {
+        if (!rebuilding.compareAndSet(false, true)) {
+            return;
+        }
+
+        try {
+            long users = jdbcTemplate.queryForObject(COUNT_USERS_SQL, Long.class);
+            if (users > searchConfig.getMaxUsers()) {
+                log.warn("User search index not built: {} users exceed the maximum of {}", users,
+                        searchConfig.getMaxUsers());
+                index = null;
+                return;
+            }
+
+            Index next = new Index();
+            nextIndex = next;
+
+            jdbcTemplate.query(connection -> {
+                PreparedStatement statement = connection.prepareStatement(SELECT_USERS_SQL);
+                statement.setFetchSize(exportConfig.getFetchSize());
+                return statement;
+            }, resultSet -> {
+                next.put(resultSet.getLong(1), resultSet.getString(2), resultSet.getString(3), true);
+            });
+            next.loaded();
+
+            index = next;
+            log.info("User search index built: {} users, ~{} KiB", next.size(), next.memoryBytes() / 1024);
+        } catch (RuntimeException e) {
+            // Without an index the search endpoint answers 503, the rest of the API is not affected
+            log.error("User search index could not be built", e);
+        } finally {
+            nextIndex = null;
+            rebuilding.set(false);
+        }
+    }
+
+    private static CustomizableThreadFactory daemonThreadFactory() {
+        CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("user-search-refresh-");
+        threadFactory.setDaemon(true);
+        return threadFactory;
+    }
+
+    /**
+     * N-gram index over slots, one per user. Slots are never reused, so a posting may point to a deleted
+     * user or to text that no longer has the gram; searches check every candidate against the current text.
+     * Searches run concurrently under the read lock, changes take the write lock.
+     */
+    static final class Index {
+
+        private static final int RANKS = 4;
+        private static final long WORD_START_1 = 1L << 48;
+        private static final long WORD_START_2 = 2L << 48;
+        // Estimated sizes: a map entry with its boxed key, and a compact string header
+        private static final long ENTRY_BYTES = 64;
+        private static final long STRING_BYTES = 48;
+
+        private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+        private final Map<Long, Postings> postings = new HashMap<>();
+        private final Map<Long, Integer> slotsById = new HashMap<>();
+        private Set<Long> removedWhileLoading = new HashSet<>();
+
+        private long[] ids = new long[1024];
+        private String[] names = new String[1024];
+        private String[] emails = new String[1024];
+        private String[] searchNames = new String[1024];
+        private String[] searchEmails = new String[1024];
+        private int slotCount;
+        private long postingEntries;
+        private long staleEntries;
+        private long postingCapacity;
+        private long textBytes;
+
+        /**
+         * Adds a user, or updates the name and email of an indexed one.
+         *
+         * @param idUser  the ID of the user
+         * @param name    the name, or null to keep the indexed one
+         * @param email   the email, or null to keep the indexed one
+         * @param loading true when read from the table: rows changed since the scan started are not overwritten
+         */
+        void put(long idUser, String name, String email, boolean loading) {
+            lock.writeLock().lock();
+            try {
+                Integer slot = slotsById.get(idUser);
+                if (loading && (slot != null || removedWhileLoading.contains(idUser))) {
+                    return;
+                }
+
+                if (slot == null) {
+                    // Users changed on another instance may arrive without both fields
+                    if (name == null || email == null) {
+                        return;
+                    }
+                    slot = newSlot(idUser);
+                    setText(slot, name, email);
+                    for (long gram : grams(searchNames[slot], searchEmails[slot])) {
+                        addPosting(gram, slot);
+                    }
+                    return;
+                }
+
+                long[] before = grams(searchNames[slot], searchEmails[slot]);
+                setText(slot, name == null ? names[slot] : name, email == null ? emails[slot] : email);
+                long[] after = grams(searchNames[slot], searchEmails[slot]);
+
+                // Both arrays are sorted: new grams get the slot, removed ones are left stale
+                int i = 0;
+                int j = 0;
+                while (i < before.length || j < after.length) {
+                    if (j == after.length || i < before.length && before[i] < after[j]) {
+                        staleEntries++;
+                        i++;
+                    } else if (i == before.length || after[j] < before[i]) {
+                        addPosting(after[j++], slot);
+                    } else {
+                        i++;
+                        j++;
+                    }
+                }
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Removes a user; its postings are left stale.
+         *
+         * @param idUser the ID of the user
+         */
+        void remove(long idUser) {
+            lock.writeLock().lock();
+            try {
+                if (removedWhileLoading != null) {
+                    removedWhileLoading.add(idUser);
+                }
+                Integer slot = slotsById.remove(idUser);
+                if (slot == null) {
+                    return;
+                }
+
+                staleEntries += grams(searchNames[slot], searchEmails[slot]).length;
+                textBytes -= textBytes(slot);
+                names[slot] = null;
+                emails[slot] = null;
+                searchNames[slot] = null;
+                searchEmails[slot] = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        /**
+         * Marks the end of the table scan.
+         */
+        void loaded() {
+            lock.writeLock().lock();
+            try {
+                removedWhileLoading = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        List<UserMatch> search(String query, int limit, int maxCandidates) {
+            long[] queryGrams = queryGrams(query);
+
+            lock.readLock().lock();
+            try {
+                Postings rarest = null;
+                for (long gram : queryGrams) {
+                    Postings candidate = postings.get(gram);
+                    if (candidate == null) {
+                        return List.of();
+                    }
+                    if (rarest == null || candidate.size < rarest.size) {
+                        rarest = candidate;
+                    }
+                }
+
+                boolean substring = query.length() >= 3;
+                int[][] ranked = new int[RANKS][limit];
+                int[] counts = new int[RANKS];
+                int found = 0;
+                byte[] deltas = rarest.deltas;
+                int position = 0;
+                int slot = 0;
+                for (int i = 0; i < rarest.size && counts[0] < limit && (i < maxCandidates || found < limit); i++) {
+                    int zigZag = 0;
+                    byte next;
+                    for (int shift = 0; ; shift += 7) {
+                        next = deltas[position++];
+                        zigZag |= (next & 0x7F) << shift;
+                        if (next >= 0) {
+                            break;
+                        }
+                    }
+                    slot += (zigZag >>> 1) ^ -(zigZag & 1);
+
+                    if (searchNames[slot] == null) {
+                        continue;
+                    }
+                    int rank = rank(searchNames[slot], searchEmails[slot], query, substring);
+                    if (rank >= 0 && counts[rank] < limit && !contains(ranked[rank], counts[rank], slot)) {
+                        ranked[rank][counts[rank]++] = slot;
+                        found++;
+                    }
+                }
+
+                List<UserMatch> matches = new ArrayList<>(limit);
+                for (int rank = 0; rank < RANKS && matches.size() < limit; rank++) {
+                    for (int i = 0; i < counts[rank] && matches.size() < limit; i++) {
+                        int match = ranked[rank][i];
+                        matches.add(new UserMatch(ids[match], names[match], emails[match]));
+                    }
+                }
+
+                return matches;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        int size() {
+            lock.readLock().lock();
+            try {
+                return slotsById.size();
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Share of the postings that point to text that no longer has the gram.
+         */
+        double staleRatio() {
+            lock.readLock().lock();
+            try {
+                return postingEntries == 0 ? 0 : (double) staleEntries / postingEntries;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * Estimated heap used by the postings, the slots and the indexed text.
+         */
+        long memoryBytes() {
+            lock.readLock().lock();
+            try {
+                return postings.size() * (ENTRY_BYTES + Postings.HEADER_BYTES) + postingCapacity
+                        + (long) ids.length * (Long.BYTES + 4L * Integer.BYTES)
+                        + slotsById.size() * ENTRY_BYTES + textBytes;
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        private int newSlot(long idUser) {
+            if (slotCount == ids.length) {
+                int capacity = ids.length * 2;
+                ids = Arrays.copyOf(ids, capacity);
+                names = Arrays.copyOf(names, capacity);
+                emails = Arrays.copyOf(emails, capacity);
+                searchNames = Arrays.copyOf(searchNames, capacity);
+                searchEmails = Arrays.copyOf(searchEmails, capacity);
+            }
+            int slot = slotCount++;
+            ids[slot] = idUser;
+            slotsById.put(idUser, slot);
+            return slot;
+        }
+
+        private void setText(int slot, String name, String email) {
+            textBytes -= textBytes(slot);
+            names[slot] = name;
+            emails[slot] = email;
+            // The normalized text shares the instance when it does not change, as with most emails
+            String searchName = UserModel.normalizeLoginName(name);
+            String searchEmail = UserModel.normalizeLoginName(email);
+            searchNames[slot] = searchName.equals(name) ? name : searchName;
+            searchEmails[slot] = searchEmail.equals(email) ? email : searchEmail;
+            textBytes += textBytes(slot);
+        }
+
+        private long textBytes(int slot) {
+            long bytes = 0;
+            for (String text : new String[]{names[slot], emails[slot]}) {
+                if (text != null) {
+                    bytes += STRING_BYTES + text.length();
+                }
+            }
+            if (searchNames[slot] != null && searchNames[slot] != names[slot]) {
+                bytes += STRING_BYTES + searchNames[slot].length();
+            }
+            if (searchEmails[slot] != null && searchEmails[slot] != emails[slot]) {
+                bytes += STRING_BYTES + searchEmails[slot].length();
+            }
+            return bytes;
+        }
+
+        private void addPosting(long gram, int slot) {
+            Postings list = postings.computeIfAbsent(gram, g -> new Postings());
+            postingCapacity -= list.deltas.length;
+            list.add(slot);
+            postingCapacity += list.deltas.length;
+            postingEntries++;
+        }
+
+        /**
+         * Ranks a candidate: 0 name prefix, 1 word of the name, 2 email prefix, 3 word of the email or,
+         * for queries of three or more characters, any substring. -1 if it does not match.
+         */
+        private static int rank(String name, String email, String query, boolean substring) {
+            if (name.startsWith(query)) {
+                return 0;
+            }
+            if (startsWord(name, query)) {
+                return 1;
+            }
+            if (email.startsWith(query)) {
+                return 2;
+            }
+            if (substring ? name.contains(query) || email.contains(query) : startsWord(email, query)) {
+                return 3;
+            }
+            return -1;
+        }
+
+        private static boolean startsWord(String text, String query) {
+            for (int i = text.indexOf(query, 1); i > 0; i = text.indexOf(query, i + 1)) {
+                if (!Character.isLetterOrDigit(text.charAt(i - 1))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean contains(int[] slots, int count, int slot) {
+            for (int i = 0; i < count; i++) {
+                if (slots[i] == slot) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Grams to look up for a query: the word start for one or two characters, the trigrams otherwise.
+         */
+        private static long[] queryGrams(String query) {
+            if (query.length() == 1) {
+                return new long[]{WORD_START_1 | query.charAt(0)};
+            }
+            if (query.length() == 2) {
+                return new long[]{WORD_START_2 | (long) query.charAt(0) << 16 | query.charAt(1)};
+            }
+
+            long[] grams = new long[query.length() - 2];
+            for (int i = 0; i < grams.length; i++) {
+                grams[i] = trigram(query, i);
+            }
+            return grams;
+        }
+
+        /**
+         * Sorted, distinct grams of a user: the trigrams and word starts of its normalized name and email.
+         */
+        private static long[] grams(String name, String email) {
+            long[] grams = new long[3 * (name.length() + email.length())];
+            int count = addGrams(name, grams, 0);
+            count = addGrams(email, grams, count);
+
+            Arrays.sort(grams, 0, count);
+            int distinct = 0;
+            for (int i = 0; i < count; i++) {
+                if (distinct == 0 || grams[i] != grams[distinct - 1]) {
+                    grams[distinct++] = grams[i];
+                }
+            }
+            return Arrays.copyOf(grams, distinct);
+        }
+
+        private static int addGrams(String text, long[] grams, int count) {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (Character.isLetterOrDigit(c) && (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)))) {
+                    grams[count++] = WORD_START_1 | c;
+                    if (i + 1 < text.length()) {
+                        grams[count++] = WORD_START_2 | (long) c << 16 | text.charAt(i + 1);
+                    }
+                }
+                if (i + 2 < text.length()) {
+                    grams[count++] = trigram(text, i);
+                }
+            }
+            return count;
+        }
+
+        private static long trigram(String text, int i) {
+            return (long) text.charAt(i) << 32 | (long) text.charAt(i + 1) << 16 | text.charAt(i + 2);
+        }
+    }
+
+    /**
+     * Growable list of slots, in insertion order, stored as the zigzag varint of the difference with the
+     * previous slot. Slots are mostly added in increasing order, so most differences take one or two bytes.
+     */
+    private static final class Postings {
+
+        private static final long HEADER_BYTES = 40;
+
+        private byte[] deltas = new byte[4];
+        private int length;
+        private int size;
+        private int last;
+
+        void add(int slot) {
+            if (length + 5 > deltas.length) {
+                deltas = Arrays.copyOf(deltas, deltas.length + (deltas.length >> 1) + 5);
+            }
+
+            int delta = slot - last;
+            int zigZag = (delta << 1) ^ (delta >> 31);
+            while ((zigZag & ~0x7F) != 0) {
+                deltas[length++] = (byte) (zigZag & 0x7F | 0x80);
+                zigZag >>>= 7;
+            }
+            deltas[length++] = (byte) zigZag;
+            last = slot;
+            size++;
+        }
+    }
+}
@@ -1,100 +1,358 @@
 package com.mercadona.api.services;
 
+import com.mercadona.api.config.PaginationConfig;
+import com.mercadona.api.config.SearchConfig;
+import com.mercadona.api.events.UserChangedEvent;
+import com.mercadona.api.exceptions.DuplicateUserException;
+import com.mercadona.api.models.UserMatch;
 import com.mercadona.api.models.UserModel;
+import com.mercadona.api.models.UserPage;
+import com.mercadona.api.models.UserUpdate;
+import com.mercadona.api.models.UserView;
 import com.mercadona.api.repositories.IUserRepository;
+import io.micrometer.core.annotation.Timed;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.ConstraintViolationException;
+import jakarta.validation.Validator;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
 
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 
+import static com.mercadona.api.constants.ApiConstants.USER_SERVICE_TIMER;
+
+/**
+ * Operaciones sobre usuarios. Cada método público se mide en el temporizador "users.service",
+ * etiquetado con el nombre del método.
+ */
 @Service
+@Timed(USER_SERVICE_TIMER)
 public class UserService {
 
     private final IUserRepository iUserRepository;
-    private final BCryptPasswordEncoder passwordEncoder;
+    private final PasswordEncoder passwordEncoder;
+    private final ApplicationEventPublisher eventPublisher;
+    private final PaginationConfig paginationConfig;
+    private final UserSearchIndex userSearchIndex;
+    private final SearchConfig searchConfig;
+    private final SecurityVersionCache securityVersionCache;
+    private final Validator validator;
 
     @Autowired
-    public UserService(IUserRepository iUserRepository, BCryptPasswordEncoder bCryptPasswordEncoder) {
+    public UserService(IUserRepository iUserRepository, PasswordEncoder passwordEncoder,
+                       ApplicationEventPublisher eventPublisher, PaginationConfig paginationConfig,
+                       UserSearchIndex userSearchIndex, SearchConfig searchConfig,
+                       SecurityVersionCache securityVersionCache, Validator validator) {
         this.iUserRepository = iUserRepository;
-        this.passwordEncoder = bCryptPasswordEncoder;
+        this.passwordEncoder = passwordEncoder;
+        this.eventPublisher = eventPublisher;
+        this.paginationConfig = paginationConfig;
+        this.userSearchIndex = userSearchIndex;
+        this.searchConfig = searchConfig;
+        this.securityVersionCache = securityVersionCache;
+        this.validator = validator;
     }
 
     /**
      * Registro de un nuevo usuario con contraseña encriptada.
+     * Se rechaza si el nombre normalizado ya existe, antes de calcular el hash.
      *
      * @param user Datos del usuario.
-     * @return Usuario registrado.
+     * @return Vista del usuario registrado.
+     * @throws DuplicateUserException Si el nombre de usuario ya existe.
      */
-    public UserModel register(UserModel user) {
+    public UserView register(UserModel user) {
+        if (iUserRepository.existsByLoginName(UserModel.normalizeLoginName(user.getName()))) {
+            throw new DuplicateUserException(user.getName());
+        }
+
         user.setPassword(passwordEncoder.encode(user.getPassword()));
+        UserModel savedUser = iUserRepository.save(user);
+        eventPublisher.publishEvent(new UserChangedEvent(savedUser.getIdUser(), null, savedUser.getName(),
+                savedUser.getEmail(), savedUser.getSecurityVersion()));
 
-        return iUserRepository.save(user);
+        return UserView.from(savedUser);
     }
 
     /**
-     * Obtiene todos los usuarios registrados.
+     * Obtiene todos los usuarios registrados, leyendo solo las columnas de la vista.
      *
      * @return Lista de usuarios.
      */
-    public List<UserModel> getUsers() {
-        return iUserRepository.findAll();
+    public List<UserView> getUsers() {
+        return iUserRepository.findAllViews();
+    }
+
+    /**
+     * Obtiene una página de usuarios ordenada por ID, paginando por cursor (keyset).
+     * El coste de cada página es constante, a diferencia de la paginación con OFFSET.
+     *
+     * @param cursor      Cursor devuelto en la página anterior, o null para la primera página.
+     * @param limit       Tamaño de página solicitado, o null para el tamaño por defecto.
+     * @param namePrefix  Prefijo del nombre por el que filtrar, o null.
+     * @param emailPrefix Prefijo del email por el que filtrar, o null.
+     * @return Página de usuarios y cursor de la siguiente página.
+     */
+    public UserPage getUsersPage(String cursor, Integer limit, String namePrefix, String emailPrefix) {
+        int pageSize = limit == null ? paginationConfig.getDefaultPageSize() : limit;
+        if (pageSize < 1 || pageSize > paginationConfig.getMaxPageSize()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Page size must be between 1 and " + paginationConfig.getMaxPageSize());
+        }
+
+        // Se pide un elemento de más para saber si existe una página siguiente
+        List<UserView> users = iUserRepository.findPageAfter(decodeCursor(cursor), escapeLike(namePrefix),
+                escapeLike(emailPrefix), Limit.of(pageSize + 1));
+        if (users.size() <= pageSize) {
+            return new UserPage(users, null);
+        }
+
+        List<UserView> page = users.subList(0, pageSize);
+
+        return new UserPage(page, encodeCursor(page.get(pageSize - 1).idUser()));
+    }
+
+    /**
+     * Busca usuarios por nombre o email para el autocompletado, en el índice en memoria.
+     * Consultas de uno o dos caracteres buscan el inicio de una palabra; las más largas, cualquier subcadena.
+     *
+     * @param query Texto a buscar.
+     * @param limit Número máximo de resultados, o null para el valor por defecto.
+     * @return Usuarios encontrados, primero los que empiezan por el texto.
+     * @throws ResponseStatusException 400 si falta el texto o el límite no es válido,
+     *                                 503 si el índice aún no está construido.
+     */
+    public List<UserMatch> searchUsers(String query, Integer limit) {
+        int results = limit == null ? searchConfig.getDefaultResults() : limit;
+        if (results < 1 || results > searchConfig.getMaxResults()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Limit must be between 1 and " + searchConfig.getMaxResults());
+        }
+        if (query == null || query.isBlank()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Query cannot be empty");
+        }
+        if (!userSearchIndex.isReady()) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "User search is not available");
+        }
+
+        return userSearchIndex.search(query, results);
     }
 
     /**
      * Guarda o actualiza un usuario en la base de datos.
+     * Al sobrescribir un usuario existente se incrementa su versión de seguridad, invalidando sus tokens.
+     * Las versiones se leen en la misma transacción de escritura, de la base de datos principal: una réplica
+     * con retraso daría versiones antiguas.
      *
      * @param userModel Datos del usuario.
-     * @return Usuario guardado.
+     * @return Vista del usuario guardado.
      */
-    public UserModel setUser(UserModel userModel) {
-        return iUserRepository.save(userModel);
+    @Transactional
+    public UserView setUser(UserModel userModel) {
+        // Las versiones no viajan en el JSON: se parte de las guardadas
+        if (userModel.getIdUser() != null) {
+            iUserRepository.findById(userModel.getIdUser())
+                    .ifPresent(current -> {
+                        userModel.setSecurityVersion(current.getSecurityVersion() + 1);
+                        userModel.setVersion(current.getVersion());
+                    });
+        }
+
+        UserModel savedUser = iUserRepository.save(userModel);
+        // El nombre anterior no se conoce: los listeners invalidan también por ID
+        eventPublisher.publishEvent(new UserChangedEvent(savedUser.getIdUser(), null, savedUser.getName(),
+                savedUser.getEmail(), savedUser.getSecurityVersion()));
+
+        return UserView.from(savedUser);
     }
 
     /**
-     * Obtiene un usuario por su ID.
+     * Obtiene un usuario por su ID, desde la caché de segundo nivel si ya se leyó; si no, de la base de datos
+     * principal, para no guardar en la caché una fila antigua de una réplica.
      *
      * @param id ID del usuario.
      * @return Usuario si se encuentra.
      */
-    public Optional<UserModel> getUserById(Long id) {
-        return iUserRepository.findById(id);
+    public Optional<UserView> getUserById(Long id) {
+        return iUserRepository.findCachedById(id).map(UserView::from);
+    }
+
+    /**
+     * Obtiene solo la versión de un usuario para las peticiones condicionales, desde la caché de segundo nivel
+     * si ya se leyó; si no, con una consulta de esa sola columna en la base de datos principal, la misma de la
+     * que se lee el usuario, sin cargarlo.
+     *
+     * @param id ID del usuario.
+     * @return Versión del usuario si existe.
+     */
+    public Optional<Long> getUserVersion(Long id) {
+        return iUserRepository.findVersionById(id);
     }
 
     /**
-     * Actualiza los datos de un usuario por su ID.
+     * Actualiza el nombre y el email de un usuario por su ID, en una única sentencia UPDATE.
+     * Si cambia el nombre se incrementa la versión de seguridad, invalidando sus tokens.
      *
      * @param userModelRequest Datos actualizados del usuario.
      * @param id               ID del usuario a actualizar.
-     * @return Usuario actualizado.
+     * @param expectedVersions Versiones sobre las que aplicar la actualización (If-Match): null sin condición,
+     *                         vacía para cualquier versión.
+     * @return Vista del usuario actualizado, con su nueva versión.
+     * @throws ResponseStatusException     400 si falta el nombre o el email, 404 si el usuario no existe
+     *                                     o 412 si no está en una versión esperada.
+     * @throws ConstraintViolationException Si el nombre o el email no son válidos.
      */
-    public UserModel updateUserById(UserModel userModelRequest, Long id) {
-        Optional<UserModel> optionalUser = iUserRepository.findById(id);
+    public UserView updateUserById(UserModel userModelRequest, Long id, List<Long> expectedVersions) {
+        if (userModelRequest.getName() == null || userModelRequest.getEmail() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Name and email are required");
+        }
 
-        if (optionalUser.isPresent()) {
-            UserModel userModel = optionalUser.get();
-            userModel.setName(userModelRequest.getName());
-            userModel.setEmail(userModelRequest.getEmail());
+        return update(id, userModelRequest.getName(), userModelRequest.getEmail(), expectedVersions);
+    }
 
-            return iUserRepository.save(userModel);
-        } else {
-            throw new IllegalArgumentException("User with ID " + id + " not found");
+    /**
+     * Actualiza solo los campos indicados de un usuario por su ID, en una única sentencia UPDATE.
+     * Los campos nulos no se escriben.
+     *
+     * @param userModelRequest Campos a actualizar del usuario.
+     * @param id               ID del usuario a actualizar.
+     * @param expectedVersions Versiones sobre las que aplicar la actualización (If-Match): null sin condición,
+     *                         vacía para cualquier versión.
+     * @return Vista del usuario actualizado, con su nueva versión.
+     * @throws ResponseStatusException     400 si no se indica ningún campo, 404 si el usuario no existe
+     *                                     o 412 si no está en una versión esperada.
+     * @throws ConstraintViolationException Si un campo indicado no es válido.
+     */
+    public UserView patchUserById(UserModel userModelRequest, Long id, List<Long> expectedVersions) {
+        if (userModelRequest.getName() == null && userModelRequest.getEmail() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Nothing to update");
         }
+
+        return update(id, userModelRequest.getName(), userModelRequest.getEmail(), expectedVersions);
     }
 
     /**
-     * Elimina un usuario por su ID.
+     * Elimina un usuario por su ID, en una única sentencia DELETE.
+     * En la misma transacción se guarda la revocación de sus tokens de acceso, que ven todas las instancias.
      *
      * @param id ID del usuario a eliminar.
-     * @return True si se eliminó correctamente, False en caso contrario.
+     * @return True si se eliminó correctamente, False si no existe.
      */
+    @Transactional
     public boolean deleteUser(Long id) {
-        if (iUserRepository.existsById(id)) {
-            iUserRepository.deleteById(id);
-            return true;
+        if (iUserRepository.deleteUserById(id) == 0) {
+            return false;
         }
-        return false;
+
+        securityVersionCache.revokeDeleted(id);
+
+        eventPublisher.publishEvent(new UserChangedEvent(id, null, null, null, null));
+        return true;
+    }
+
+    /**
+     * Valida los campos indicados con las restricciones de {@link UserModel} y aplica la actualización
+     * sin cargar antes la entidad; el resultado indica si el usuario no existe o no está en una versión esperada.
+     * Solo un cambio real de nombre se publica como tal, con la nueva versión de seguridad, de modo que
+     * repetir el mismo nombre no invalida los tokens del usuario.
+     *
+     * @param id               ID del usuario.
+     * @param name             Nuevo nombre, o null para no cambiarlo.
+     * @param email            Nuevo email, o null para no cambiarlo.
+     * @param expectedVersions Versiones esperadas, o null sin condición.
+     * @return Vista del usuario actualizado.
+     * @throws ConstraintViolationException Si un campo no cumple sus restricciones.
+     */
+    private UserView update(Long id, String name, String email, List<Long> expectedVersions) {
+        UserModel fields = new UserModel();
+        fields.setName(name);
+        fields.setEmail(email);
+        Set<ConstraintViolation<UserModel>> violations = new HashSet<>();
+        if (name != null) {
+            violations.addAll(validator.validateProperty(fields, "name"));
+        }
+        if (email != null) {
+            violations.addAll(validator.validateProperty(fields, "email"));
+        }
+        if (!violations.isEmpty()) {
+            throw new ConstraintViolationException(violations);
+        }
+
+        UserUpdate update = iUserRepository.updateById(id, name, email, expectedVersions);
+        if (update.status() == UserUpdate.Status.NOT_FOUND) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "User " + id + " not found");
+        }
+        if (update.status() == UserUpdate.Status.VERSION_MISMATCH) {
+            throw new ResponseStatusException(HttpStatus.PRECONDITION_FAILED, "User was modified");
+        }
+
+        boolean renamed = name != null && !name.equals(update.previousName());
+        if (renamed) {
+            eventPublisher.publishEvent(new UserChangedEvent(id, update.previousName(), name, email,
+                    update.securityVersion()));
+        } else if (email != null) {
+            eventPublisher.publishEvent(new UserChangedEvent(id, null, null, email, null));
+        }
+
+        return update.user();
+    }
+
+    /**
+     * Codifica el ID del último usuario de una página como cursor opaco.
+     *
+     * @param lastId ID del último usuario de la página.
+     * @return Cursor en Base64 URL-safe.
+     */
+    private static String encodeCursor(long lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(ByteBuffer.allocate(Long.BYTES).putLong(lastId).array());
+    }
+
+    /**
+     * Decodifica un cursor opaco al ID del último usuario de la página anterior.
+     *
+     * @param cursor Cursor recibido, o null para la primera página.
+     * @return ID a partir del cual continuar.
+     */
+    private static long decodeCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return 0L;
+        }
+        try {
+            byte[] bytes = Base64.getUrlDecoder().decode(cursor);
+            if (bytes.length != Long.BYTES) {
+                throw new IllegalArgumentException("Unexpected cursor length");
+            }
+
+            return ByteBuffer.wrap(bytes).getLong();
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor", e);
+        }
+    }
+
+    /**
+     * Escapa los comodines de LIKE de un prefijo, usando '!' como carácter de escape.
+     *
+     * @param prefix Prefijo recibido, o null.
+     * @return Prefijo escapado, o null si no se ha indicado.
+     */
+    private static String escapeLike(String prefix) {
+        if (prefix == null || prefix.isEmpty()) {
+            return null;
+        }
+
+        return prefix.replace("!", "!!").replace("%", "!%").replace("_", "!_");
     }
 
 /*
@@ -110,15 +368,6 @@ public class UserService {
     }
 
 
-    *//**
-     * Busca usuarios por nombre de usuario.
-     * @param username Nombre de usuario.
-     * @return Lista de usuarios con el nombre especificado.
-     *//*
-    public List<UserModel> getUsersByUsername(String username) {
-        return iUserRepository.findByUsernameContainingIgnoreCase(username);
-    }
-
     *//**
      * Cambia la contraseña de un usuario.
      * @param id ID del usuario.
@@ -0,0 +1,136 @@
+package com.mercadona.api.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.mercadona.api.config.JwtConfig;
+import com.mercadona.api.models.VerifiedToken;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static com.mercadona.api.constants.ApiConstants.TOKEN_CACHE_NAME;
+import static com.mercadona.api.constants.ApiConstants.TOKEN_DIGEST_ALGORITHM;
+
+/**
+ * Bounded cache of already verified JWT tokens, keyed by the SHA-256 digest of the token.
+ * Each entry expires at the token's own expiration, so a cached token can never outlive its "exp" claim.
+ * Hit, miss and eviction counters are published to Micrometer under the "jwt.verified-tokens" cache name.
+ */
+@Component
+public class VerifiedTokenCache {
+
+    private final boolean enabled;
+    private final Cache<ByteBuffer, VerifiedToken> cache;
+
+    /**
+     * Creates the cache from the JWT configuration and registers its metrics.
+     *
+     * @param jwtConfig     the JWT configuration
+     * @param meterRegistry the registry where the cache statistics are published
+     */
+    @Autowired
+    public VerifiedTokenCache(JwtConfig jwtConfig, MeterRegistry meterRegistry) {
+        this(jwtConfig.isCacheEnabled(), jwtConfig.getCacheMaximumSize());
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, TOKEN_CACHE_NAME);
+    }
+
+    /**
+     * Creates the cache without publishing metrics.
+     *
+     * @param enabled     whether verified tokens are cached at all
+     * @param maximumSize the maximum number of cached tokens
+     */
+    public VerifiedTokenCache(boolean enabled, long maximumSize) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new TokenExpiry())
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the verified token from the cache, or verifies it and caches the result.
+     * Tokens that fail verification are never cached, the verifier exception is propagated instead.
+     *
+     * @param token    the raw JWT token
+     * @param verifier the function that parses and verifies the token
+     * @return the verified token
+     */
+    public VerifiedToken get(String token, Function<String, VerifiedToken> verifier) {
+
+        if (!enabled) {
+            return verifier.apply(token);
+        }
+
+        ByteBuffer key = digest(token);
+        VerifiedToken verified = cache.get(key, k -> verifier.apply(token));
+
+        // Caffeine expires entries lazily with nanosecond precision; double-check against the wall clock
+        if (verified.isExpiredAt(System.currentTimeMillis())) {
+            cache.invalidate(key);
+            return verifier.apply(token);
+        }
+
+        return verified;
+    }
+
+    /**
+     * Returns the hit, miss and eviction statistics of the cache.
+     *
+     * @return the cache statistics
+     */
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    /**
+     * Computes the SHA-256 digest of the token, used as cache key instead of the token itself.
+     *
+     * @param token the raw JWT token
+     * @return the digest wrapped in a ByteBuffer, which has value-based equality
+     */
+    private static ByteBuffer digest(String token) {
+
+        try {
+            MessageDigest messageDigest = MessageDigest.getInstance(TOKEN_DIGEST_ALGORITHM);
+
+            return ByteBuffer.wrap(messageDigest.digest(token.getBytes(StandardCharsets.US_ASCII)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Expires every entry at the expiration time of its token.
+     */
+    private static final class TokenExpiry implements Expiry<ByteBuffer, VerifiedToken> {
+
+        @Override
+        public long expireAfterCreate(ByteBuffer key, VerifiedToken value, long currentTime) {
+            long remainingMillis = value.expiresAt().getTime() - System.currentTimeMillis();
+
+            return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+        }
+
+        @Override
+        public long expireAfterUpdate(ByteBuffer key, VerifiedToken value, long currentTime, long currentDuration) {
+            return expireAfterCreate(key, value, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(ByteBuffer key, VerifiedToken value, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
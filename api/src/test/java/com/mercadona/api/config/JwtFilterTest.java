@@ -0,0 +1,131 @@
+package com.mercadona.api.config;
+
+import com.mercadona.api.models.UserModel;
+import com.mercadona.api.models.UserPrincipal;
+import com.mercadona.api.models.VerifiedToken;
+import com.mercadona.api.services.JWTService;
+import com.mercadona.api.services.MyUserDetailsService;
+import com.mercadona.api.services.TokenRevocationList;
+import com.mercadona.api.services.UserService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Authenticates access tokens in claims-only mode: tokens carrying the user claims are accepted or rejected
+ * from the claims, the revocation list and the in-memory security versions, without loading the user.
+ */
+@SpringBootTest(properties = "jwt.claims-only.enabled=true")
+@ActiveProfiles("h2")
+class JwtFilterTest {
+
+    @Autowired
+    private JwtFilter jwtFilter;
+
+    @Autowired
+    private JWTService jwtService;
+
+    @Autowired
+    private TokenRevocationList revocations;
+
+    @Autowired
+    private UserService userService;
+
+    @SpyBean
+    private MyUserDetailsService myUserDetailsService;
+
+    private Long idUser;
+    private String token;
+
+    @BeforeEach
+    void issueToken() {
+        idUser = userService.register(user("Ana")).idUser();
+        token = jwtService.generateToken((UserPrincipal) myUserDetailsService.loadPrincipalByUsername("Ana"));
+        clearInvocations(myUserDetailsService);
+    }
+
+    @AfterEach
+    void deleteUser() {
+        SecurityContextHolder.clearContext();
+        // Through the service, so the cached principal of the name is dropped as well
+        userService.deleteUser(idUser);
+    }
+
+    @Test
+    void currentTokenIsAuthenticatedFromItsClaims() throws Exception {
+        Authentication authentication = authenticate(token);
+
+        assertThat(authentication).isNotNull();
+        assertThat(((UserPrincipal) authentication.getPrincipal()).idUser()).isEqualTo(idUser);
+        verifyUserNotLoaded();
+    }
+
+    @Test
+    void revokedTokenIsRejectedWithoutLoadingTheUser() throws Exception {
+        VerifiedToken verified = jwtService.verify(token);
+        revocations.revoke(verified.jti(), verified.expiresAt().getTime());
+
+        assertThat(authenticate(token)).isNull();
+        verifyUserNotLoaded();
+    }
+
+    @Test
+    void tokenOfAnOlderSecurityVersionIsRejectedWithoutLoadingTheUser() throws Exception {
+        UserModel renamed = user("Bea");
+        renamed.setIdUser(idUser);
+        userService.setUser(renamed);
+        clearInvocations(myUserDetailsService);
+
+        assertThat(authenticate(token)).isNull();
+        verifyUserNotLoaded();
+    }
+
+    @Test
+    void tokenOfADeletedUserIsRejectedWithoutLoadingTheUser() throws Exception {
+        userService.deleteUser(idUser);
+        clearInvocations(myUserDetailsService);
+
+        assertThat(authenticate(token)).isNull();
+        verifyUserNotLoaded();
+    }
+
+    // Helper Methods
+
+    private Authentication authenticate(String accessToken) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/users");
+        request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + accessToken);
+
+        jwtFilter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    private void verifyUserNotLoaded() {
+        verify(myUserDetailsService, never()).loadPrincipalByUsername(anyString());
+        verify(myUserDetailsService, never()).loadUserByUsername(anyString());
+    }
+
+    private static UserModel user(String name) {
+        UserModel user = new UserModel();
+        user.setName(name);
+        user.setPassword("Secret123!");
+        user.setEmail("ana@example.com");
+        return user;
+    }
+}
@@ -0,0 +1,119 @@
+package com.mercadona.api.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.mercadona.api.constants.ApiConstants.LOGIN_THROTTLE_REJECTED_METRIC;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Throttles login requests with a manual clock: 60 attempts per minute and IP with a burst of 2,
+ * and 6 attempts per minute and login name, one every 10 seconds, with a burst of 1.
+ */
+class LoginThrottleFilterTest {
+
+    private static final String LOGIN_ENDPOINT = "/auth/login";
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private LoginThrottleFilter loginThrottleFilter;
+
+    @BeforeEach
+    void createFilter() {
+        EndpointConfig endpointConfig = new EndpointConfig();
+        ReflectionTestUtils.setField(endpointConfig, "loginEndpoint", LOGIN_ENDPOINT);
+
+        LoginThrottleConfig loginThrottleConfig = new LoginThrottleConfig();
+        ReflectionTestUtils.setField(loginThrottleConfig, "enabled", true);
+        ReflectionTestUtils.setField(loginThrottleConfig, "ipPermitsPerMinute", 60);
+        ReflectionTestUtils.setField(loginThrottleConfig, "ipBurst", 2);
+        ReflectionTestUtils.setField(loginThrottleConfig, "userPermitsPerMinute", 6);
+        ReflectionTestUtils.setField(loginThrottleConfig, "userBurst", 1);
+        ReflectionTestUtils.setField(loginThrottleConfig, "maxKeys", 100L);
+        ReflectionTestUtils.setField(loginThrottleConfig, "maxBodySize", 4096);
+
+        loginThrottleFilter = new LoginThrottleFilter(endpointConfig, loginThrottleConfig, new ObjectMapper(),
+                meterRegistry, nanos::get);
+    }
+
+    @Test
+    void loginNameOverItsLimitGetsRetryAfter() throws Exception {
+        assertThat(login("10.0.0.1", "Ana").getStatus()).isEqualTo(HttpStatus.OK.value());
+
+        // The login name is normalized, so another spelling from another IP shares the bucket
+        MockHttpServletResponse rejected = login("10.0.0.2", " ANA ");
+        assertThat(rejected.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS.value());
+        assertThat(rejected.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("10");
+        assertThat(rejectedCount("user")).isEqualTo(1);
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(9));
+        assertThat(login("10.0.0.3", "Ana").getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThat(login("10.0.0.4", "Ana").getStatus()).isEqualTo(HttpStatus.OK.value());
+    }
+
+    @Test
+    void clientIpOverItsBurstGetsRetryAfterUntilARefill() throws Exception {
+        assertThat(login("10.0.0.1", "Ana").getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(login("10.0.0.1", "Bob").getStatus()).isEqualTo(HttpStatus.OK.value());
+
+        MockHttpServletResponse rejected = login("10.0.0.1", "Carl");
+        assertThat(rejected.getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS.value());
+        assertThat(rejected.getHeader(HttpHeaders.RETRY_AFTER)).isEqualTo("1");
+        assertThat(rejectedCount("ip")).isEqualTo(1);
+
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        assertThat(login("10.0.0.1", "Carl").getStatus()).isEqualTo(HttpStatus.OK.value());
+        assertThat(login("10.0.0.1", "Dave").getStatus()).isEqualTo(HttpStatus.TOO_MANY_REQUESTS.value());
+    }
+
+    @Test
+    void acceptedLoginReachesTheControllerWithItsBody() throws Exception {
+        MockFilterChain filterChain = new MockFilterChain();
+
+        loginThrottleFilter.doFilter(loginRequest("10.0.0.1", "Ana"), new MockHttpServletResponse(), filterChain);
+
+        assertThat(filterChain.getRequest()).isNotNull();
+        assertThat(new String(filterChain.getRequest().getInputStream().readAllBytes(), StandardCharsets.UTF_8))
+                .isEqualTo(body("Ana"));
+    }
+
+    // Helper Methods
+
+    private MockHttpServletResponse login(String ip, String name) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        loginThrottleFilter.doFilter(loginRequest(ip, name), response, new MockFilterChain());
+        return response;
+    }
+
+    private static MockHttpServletRequest loginRequest(String ip, String name) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", LOGIN_ENDPOINT);
+        request.setServletPath(LOGIN_ENDPOINT);
+        request.setRemoteAddr(ip);
+        request.setContent(body(name).getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    private static String body(String name) {
+        return "{\"name\":\"" + name + "\",\"password\":\"Secret123!\"}";
+    }
+
+    private double rejectedCount(String key) {
+        return meterRegistry.get(LOGIN_THROTTLE_REJECTED_METRIC).tag("key", key).counter().count();
+    }
+}
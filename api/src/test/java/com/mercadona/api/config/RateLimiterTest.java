@@ -0,0 +1,69 @@
+package com.mercadona.api.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Drives the limiter with a manual clock: 60 permits per minute, one per second, with a burst of 3.
+ */
+class RateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final AtomicLong nanos = new AtomicLong();
+
+    @Test
+    void burstIsGrantedAtOnceThenPermitsRefillAtTheSustainedRate() {
+        RateLimiter limiter = new RateLimiter(60, 3, 10, nanos::get);
+
+        assertThat(limiter.tryAcquire("ana")).isZero();
+        assertThat(limiter.tryAcquire("ana")).isZero();
+        assertThat(limiter.tryAcquire("ana")).isZero();
+        assertThat(limiter.tryAcquire("ana")).isEqualTo(SECOND);
+        assertThat(limiter.tryAcquire("bob")).isZero();
+
+        nanos.addAndGet(SECOND / 2);
+        assertThat(limiter.tryAcquire("ana")).isEqualTo(SECOND / 2);
+
+        nanos.addAndGet(SECOND / 2);
+        assertThat(limiter.tryAcquire("ana")).isZero();
+        assertThat(limiter.tryAcquire("ana")).isEqualTo(SECOND);
+    }
+
+    @Test
+    void idleKeysRefillUpToTheBurstOnly() {
+        RateLimiter limiter = new RateLimiter(60, 3, 10, nanos::get);
+        for (int i = 0; i < 3; i++) {
+            limiter.tryAcquire("ana");
+        }
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(10));
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.tryAcquire("ana")).isZero();
+        }
+        assertThat(limiter.tryAcquire("ana")).isEqualTo(SECOND);
+    }
+
+    @Test
+    void fullLimiterRejectsNewKeysInsteadOfEvictingActiveOnes() {
+        RateLimiter limiter = new RateLimiter(60, 3, 1, nanos::get);
+        for (int i = 0; i < 3; i++) {
+            assertThat(limiter.tryAcquire("ana")).isZero();
+        }
+
+        assertThat(limiter.tryAcquire("bob")).isEqualTo(3 * SECOND);
+        // The bucket of the active key is kept, so it stays throttled
+        assertThat(limiter.tryAcquire("ana")).isEqualTo(SECOND);
+        assertThat(limiter.keys()).isEqualTo(1);
+
+        // Once idle for the burst window the key expires, with its bucket full again, and frees its slot
+        nanos.addAndGet(3 * SECOND);
+        assertThat(limiter.tryAcquire("bob")).isZero();
+        assertThat(limiter.tryAcquire("ana")).isEqualTo(3 * SECOND);
+    }
+}
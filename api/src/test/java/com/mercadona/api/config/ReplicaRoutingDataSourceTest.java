@@ -0,0 +1,188 @@
+package com.mercadona.api.config;
+
+import com.mercadona.api.controllers.UserController;
+import com.mercadona.api.models.UserModel;
+import com.mercadona.api.models.UserView;
+import com.mercadona.api.repositories.IUserRepository;
+import com.mercadona.api.services.UserService;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.util.List;
+
+import static com.mercadona.api.constants.ApiConstants.DATASOURCE_ROUTING_METRIC;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Routes the transactions between the H2 primary and replica of the replicas-h2 profile. Both databases hold
+ * a user with the same ID and a different name, so the name read tells where a transaction was routed.
+ * Every test acts as its own authenticated client: they all share the address of the mock request, which
+ * a write in another test would keep on the primary during the sticky window.
+ */
+@SpringBootTest
+@ActiveProfiles("replicas-h2")
+class ReplicaRoutingDataSourceTest {
+
+    private static final String INSERT_USER_SQL = "INSERT INTO users "
+            + "(id_user, name, login_name, password, email, security_version, version) VALUES (1, ?, ?, 'unused', ?, ?, ?)";
+    private static final String SELECT_NAME_SQL = "SELECT name FROM users WHERE id_user = 1";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private IUserRepository iUserRepository;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserController userController;
+
+    @Autowired
+    private ReplicaConfig replicaConfig;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private SingleConnectionDataSource replicaDataSource;
+    private JdbcTemplate replica;
+
+    @BeforeEach
+    void seedUsers() {
+        replicaDataSource = new SingleConnectionDataSource(replicaConfig.getUrls().get(0), "sa", "", true);
+        replica = new JdbcTemplate(replicaDataSource);
+
+        // Statements outside a transaction go to the primary, where Hibernate created the schema
+        String createTable = jdbcTemplate.queryForList("SCRIPT NODATA TABLE users", String.class).stream()
+                .filter(sql -> sql.startsWith("CREATE") && sql.contains("TABLE"))
+                .findFirst()
+                .orElseThrow();
+        replica.execute("DROP TABLE IF EXISTS users");
+        replica.execute(createTable);
+
+        jdbcTemplate.update("DELETE FROM users");
+        jdbcTemplate.update(INSERT_USER_SQL, "Primary Ana", "primary ana", "ana@example.com", 3, 5);
+        replica.update(INSERT_USER_SQL, "Replica Ana", "replica ana", "ana@example.com", 0, 0);
+        entityManagerFactory.getCache().evictAll();
+    }
+
+    @AfterEach
+    void clearClient() {
+        SecurityContextHolder.clearContext();
+        replicaDataSource.destroy();
+    }
+
+    @Test
+    void readOnlyTransactionsGoToTheReplica() {
+        actAs("ana");
+
+        assertThat(readName(true)).isEqualTo("Replica Ana");
+        assertThat(iUserRepository.findAllViews()).extracting(UserView::name).containsExactly("Replica Ana");
+    }
+
+    @Test
+    void writesAndStickyReadsGoToThePrimary() {
+        assertThat(readName(false)).isEqualTo("Primary Ana");
+
+        // Right after a write, the reads of the same client see it
+        actAs("bob");
+        double sticky = routingCount("primary", "sticky");
+        transactionTemplate.executeWithoutResult(status ->
+                jdbcTemplate.update("UPDATE users SET name = 'Primary Anna' WHERE id_user = 1"));
+        assertThat(readName(true)).isEqualTo("Primary Anna");
+        assertThat(routingCount("primary", "sticky")).isEqualTo(sticky + 1);
+
+        // Other clients still read from the replica
+        actAs("carl");
+        assertThat(readName(true)).isEqualTo("Replica Ana");
+    }
+
+    @Test
+    void setUserReadsTheVersionsFromThePrimary() {
+        actAs("dave");
+        UserModel user = new UserModel();
+        user.setIdUser(1L);
+        user.setName("Ana");
+        user.setPassword("Secret123!");
+        user.setEmail("ana@example.com");
+
+        userService.setUser(user);
+
+        // With the versions of the replica the save would fail the version check
+        assertThat(jdbcTemplate.queryForMap("SELECT name, security_version, version FROM users WHERE id_user = 1"))
+                .containsEntry("name", "Ana")
+                .containsEntry("security_version", 4)
+                .containsEntry("version", 6L);
+    }
+
+    @Test
+    void cachedUsersAreLoadedFromThePrimary() {
+        actAs("erin");
+
+        // A miss reads only the version, from the primary, and caches nothing
+        assertThat(userService.getUserVersion(1L)).contains(5L);
+        assertThat(entityManagerFactory.getCache().contains(UserModel.class, 1L)).isFalse();
+
+        assertThat(userService.getUserById(1L)).map(UserView::name).contains("Primary Ana");
+        assertThat(entityManagerFactory.getCache().contains(UserModel.class, 1L)).isTrue();
+        assertThat(userService.getUserVersion(1L)).contains(5L);
+    }
+
+    @Test
+    void laggingReplicaDoesNotAnswerNotModified() {
+        actAs("fred");
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/users/1");
+        // The version the replica still has
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"0\"");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        ResponseEntity<UserView> user = userController.getUserById(1L, new ServletWebRequest(request, response));
+
+        assertThat(response.getStatus()).isNotEqualTo(HttpStatus.NOT_MODIFIED.value());
+        assertThat(user.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(user.getHeaders().getETag()).isEqualTo("\"5\"");
+        assertThat(user.getBody()).extracting(UserView::name).isEqualTo("Primary Ana");
+    }
+
+    // Helper Methods
+
+    private static void actAs(String client) {
+        SecurityContextHolder.getContext().setAuthentication(
+                UsernamePasswordAuthenticationToken.authenticated(client, null, List.of()));
+    }
+
+    private String readName(boolean readOnly) {
+        TransactionTemplate transaction = new TransactionTemplate(transactionTemplate.getTransactionManager());
+        transaction.setReadOnly(readOnly);
+        return transaction.execute(status -> jdbcTemplate.queryForObject(SELECT_NAME_SQL, String.class));
+    }
+
+    private double routingCount(String target, String reason) {
+        return meterRegistry.get(DATASOURCE_ROUTING_METRIC).tag("target", target).tag("reason", reason)
+                .counter().count();
+    }
+}
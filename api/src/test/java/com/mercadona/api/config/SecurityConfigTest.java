@@ -0,0 +1,49 @@
+package com.mercadona.api.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalManagementPort;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.context.ActiveProfiles;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Serves the actuator on its own management port: the metrics are readable there without a token,
+ * and do not exist on the port of the API.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "management.server.port=0")
+@AutoConfigureObservability
+@ActiveProfiles("h2")
+class SecurityConfigTest {
+
+    @LocalServerPort
+    private int port;
+
+    @LocalManagementPort
+    private int managementPort;
+
+    @Autowired
+    private TestRestTemplate restTemplate;
+
+    @Test
+    void metricsAreOnlyServedOnTheManagementPort() {
+        assertThat(get(managementPort, "/actuator/prometheus")).isEqualTo(HttpStatus.OK);
+        assertThat(get(managementPort, "/actuator/health")).isEqualTo(HttpStatus.OK);
+
+        assertThat(get(port, "/actuator/prometheus")).isEqualTo(HttpStatus.UNAUTHORIZED);
+        assertThat(get(port, "/actuator/health")).isEqualTo(HttpStatus.UNAUTHORIZED);
+    }
+
+    // Helper Methods
+
+    private HttpStatus get(int port, String path) {
+        return HttpStatus.valueOf(restTemplate.getForEntity("http://localhost:" + port + path, String.class)
+                .getStatusCode().value());
+    }
+}
@@ -0,0 +1,24 @@
+package com.mercadona.api.controllers;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AuthControllerTest {
+
+    // Rejected before the service is reached
+    private final AuthController authController = new AuthController(null);
+
+    @Test
+    void logoutRequiresABearerToken() {
+        for (String authorization : new String[]{"Basic YW5hOnNlY3JldA==", "Bear", ""}) {
+            assertThatThrownBy(() -> authController.logout(authorization, null))
+                    .as(authorization)
+                    .isInstanceOfSatisfying(ResponseStatusException.class,
+                            e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.mercadona.api.controllers;
+
+import com.mercadona.api.models.UserModel;
+import com.mercadona.api.models.UserView;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.server.ResponseStatusException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Updates users through the PUT and PATCH endpoints: a missing user and a version mismatch are told apart,
+ * and the response is built from the update without reading the user again.
+ */
+@SpringBootTest
+@ActiveProfiles("h2")
+class UserControllerTest {
+
+    private static final long ID_USER = 1;
+    private static final long MISSING_ID_USER = 999;
+
+    @Autowired
+    private UserController userController;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @BeforeEach
+    void seedUser() {
+        jdbcTemplate.update("DELETE FROM users");
+        jdbcTemplate.update("INSERT INTO users (id_user, name, login_name, password, email, security_version, version) "
+                + "VALUES (?, 'Ana', 'ana', 'unused', 'ana@example.com', 0, 0)", ID_USER);
+        entityManagerFactory.getCache().evictAll();
+    }
+
+    @Test
+    void missingUserIsNotFoundEvenWithIfMatch() {
+        assertThatThrownBy(() -> userController.updateUserById(user("Bea", "bea@example.com"), MISSING_ID_USER,
+                "\"0\"", null))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+        assertThatThrownBy(() -> userController.patchUserById(user(null, "bea@example.com"), MISSING_ID_USER,
+                null, null))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND));
+    }
+
+    @Test
+    void staleIfMatchIsPreconditionFailed() {
+        assertThatThrownBy(() -> userController.updateUserById(user("Bea", "bea@example.com"), ID_USER,
+                "\"7\"", null))
+                .isInstanceOfSatisfying(ResponseStatusException.class,
+                        e -> assertThat(e.getStatusCode()).isEqualTo(HttpStatus.PRECONDITION_FAILED));
+        assertThat(jdbcTemplate.queryForObject("SELECT name FROM users WHERE id_user = ?", String.class, ID_USER))
+                .isEqualTo("Ana");
+    }
+
+    @Test
+    void updatesAnswerWithoutReadingTheUserAgain() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        ResponseEntity<UserView> put = userController.updateUserById(user("Bea", "bea@example.com"), ID_USER,
+                "\"0\"", null);
+        assertThat(put.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(put.getHeaders().getETag()).isEqualTo("\"1\"");
+        assertThat(put.getBody()).isEqualTo(new UserView(ID_USER, "Bea", "bea@example.com", 1));
+
+        ResponseEntity<UserView> patch = userController.patchUserById(user(null, "bea@example.org"), ID_USER,
+                null, "return=minimal");
+        assertThat(patch.getStatusCode()).isEqualTo(HttpStatus.NO_CONTENT);
+        assertThat(patch.getHeaders().getETag()).isEqualTo("\"2\"");
+
+        assertThat(statistics.getEntityLoadCount()).isZero();
+        assertThat(statistics.getSecondLevelCacheHitCount()).isZero();
+    }
+
+    // Helper Methods
+
+    private static UserModel user(String name, String email) {
+        UserModel user = new UserModel();
+        user.setName(name);
+        user.setEmail(email);
+        return user;
+    }
+}
@@ -0,0 +1,167 @@
+package com.mercadona.api.services;
+
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.UnsupportedJwtException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Rotates a key file shared by two nodes with a manual clock: keys are replaced every 7 days, published
+ * 5 minutes before they sign, and kept 15 minutes, the token lifetime, after they are replaced.
+ */
+class JwtKeyRingTest {
+
+    private static final Duration ROTATION = Duration.ofDays(7);
+    private static final Duration OVERLAP = Duration.ofMinutes(5);
+    private static final Duration RELOAD_INTERVAL = Duration.ofHours(1);
+    private static final Duration MAX_TOKEN_TTL = Duration.ofMinutes(15);
+    private static final Instant START = Instant.parse("2026-01-05T00:00:00Z");
+
+    @TempDir
+    private Path directory;
+
+    private final ManualClock clock = new ManualClock(START);
+    private final List<JwtKeyRing> rings = new ArrayList<>();
+
+    @AfterEach
+    void stopRings() {
+        rings.forEach(JwtKeyRing::destroy);
+    }
+
+    @Test
+    void nextKeyIsPublishedBeforeItSignsAndTheReplacedKeyOutlivesItsTokens() {
+        JwtKeyRing node = open();
+        String firstKid = node.signingKeyId();
+        String firstToken = sign(node, "ana");
+
+        // Published "overlap" before its activation, so the other node knows it before it signs
+        clock.set(START.plus(ROTATION).minus(OVERLAP));
+        node.refresh();
+        JwtKeyRing otherNode = open();
+        assertThat(node.signingKeyId()).isEqualTo(firstKid);
+        assertThat(otherNode.signingKeyId()).isEqualTo(firstKid);
+
+        clock.set(START.plus(ROTATION));
+        node.refresh();
+        String secondKid = node.signingKeyId();
+        String secondToken = sign(node, "bob");
+        assertThat(secondKid).isNotEqualTo(firstKid);
+        assertThat(subject(otherNode, secondToken)).isEqualTo("bob");
+        assertThat(subject(otherNode, firstToken)).isEqualTo("ana");
+
+        // The replaced key verifies until every token it signed has expired
+        clock.set(START.plus(ROTATION).plus(MAX_TOKEN_TTL));
+        node.refresh();
+        assertThat(subject(node, firstToken)).isEqualTo("ana");
+
+        clock.set(START.plus(ROTATION).plus(MAX_TOKEN_TTL).plusSeconds(1));
+        node.refresh();
+        otherNode.refresh();
+        for (JwtKeyRing ring : List.of(node, otherNode)) {
+            assertThatThrownBy(() -> subject(ring, firstToken)).isInstanceOf(UnsupportedJwtException.class);
+            assertThat(subject(ring, secondToken)).isEqualTo("bob");
+            assertThat(ring.signingKeyId()).isEqualTo(secondKid);
+        }
+    }
+
+    @Test
+    void lateRotationStillWaitsForTheOverlap() {
+        JwtKeyRing node = open();
+        String firstKid = node.signingKeyId();
+
+        // Nobody rotated in time, e.g. every node was down: the new key must not sign before others load it
+        clock.set(START.plus(ROTATION).plus(Duration.ofDays(1)));
+        node.refresh();
+        assertThat(node.signingKeyId()).isEqualTo(firstKid);
+
+        clock.set(START.plus(ROTATION).plus(Duration.ofDays(1)).plus(OVERLAP));
+        node.refresh();
+        assertThat(node.signingKeyId()).isNotEqualTo(firstKid);
+    }
+
+    @Test
+    void keysSurviveARestart() throws Exception {
+        JwtKeyRing node = open();
+        String token = sign(node, "ana");
+        node.destroy();
+
+        JwtKeyRing restarted = open();
+
+        assertThat(restarted.signingKeyId()).isEqualTo(node.signingKeyId());
+        assertThat(subject(restarted, token)).isEqualTo("ana");
+        // The file holds the secrets, so only the owner may read it
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(directory.resolve("jwt-keys.json"))))
+                .isEqualTo("rw-------");
+    }
+
+    // Helper Methods
+
+    private JwtKeyRing open() {
+        JwtKeyRing ring = new JwtKeyRing(directory.resolve("jwt-keys.json"), ROTATION, OVERLAP, RELOAD_INTERVAL,
+                MAX_TOKEN_TTL, clock);
+        rings.add(ring);
+        return ring;
+    }
+
+    private static String sign(JwtKeyRing ring, String subject) {
+        return Jwts.builder()
+                .header()
+                .keyId(ring.signingKeyId())
+                .and()
+                .subject(subject)
+                .signWith(ring.signingKey())
+                .compact();
+    }
+
+    private static String subject(JwtKeyRing ring, String token) {
+        JwtParser parser = Jwts.parser().keyLocator(ring).build();
+        return parser.parseSignedClaims(token).getPayload().getSubject();
+    }
+
+    /**
+     * Clock that only moves when the test sets it.
+     */
+    private static final class ManualClock extends Clock {
+
+        private volatile Instant instant;
+
+        private ManualClock(Instant instant) {
+            this.instant = instant;
+        }
+
+        private void set(Instant instant) {
+            this.instant = instant;
+        }
+
+        @Override
+        public Instant instant() {
+            return instant;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
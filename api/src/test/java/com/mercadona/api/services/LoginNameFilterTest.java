@@ -0,0 +1,131 @@
+package com.mercadona.api.services;
+
+import com.mercadona.api.models.UserModel;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.mercadona.api.constants.ApiConstants.LOGIN_FILTER_METRIC_PREFIX;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Keeps the login name filter in step with the users table. The rebuild ratio is too high to trigger
+ * a rebuild on its own, so the names known to the filter come only from the user change events until
+ * a test rebuilds it; a name the filter missed would be counted as found only in the database.
+ */
+@SpringBootTest(properties = "users.login-filter.rebuild-ratio=1000")
+@ActiveProfiles("h2")
+class LoginNameFilterTest {
+
+    @Autowired
+    private LoginNameFilter loginNameFilter;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    void clearUsers() {
+        jdbcTemplate.update("DELETE FROM users");
+    }
+
+    @Test
+    void registeredAndRenamedNamesAreNeverRejected() {
+        double missed = counter("missed");
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            ids.add(userService.register(user(null, "User " + i, "user" + i + "@example.com")).idUser());
+        }
+        for (int i = 0; i < 10; i += 2) {
+            userService.setUser(user(ids.get(i), "Renamed " + i, "user" + i + "@example.com"));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            String name = i % 2 == 0 ? "Renamed " + i : "User " + i;
+            assertThat(loginNameFilter.mightExist(UserModel.normalizeLoginName(name))).as(name).isTrue();
+        }
+        assertThat(counter("missed")).isEqualTo(missed);
+    }
+
+    @Test
+    void unknownNamesAreRejected() {
+        double rejected = counter("rejected");
+
+        assertThat(loginNameFilter.mightExist("nobody")).isFalse();
+        assertThat(counter("rejected")).isEqualTo(rejected + 1);
+    }
+
+    @Test
+    void rebuildForgetsStaleNamesAndKeepsTheCurrentOnes() {
+        Long ana = userService.register(user(null, "Ana", "ana@example.com")).idUser();
+        Long bob = userService.register(user(null, "Bob", "bob@example.com")).idUser();
+        userService.setUser(user(ana, "Cleo", "ana@example.com"));
+        userService.deleteUser(bob);
+
+        // Bloom filters cannot forget, so the old names stay until the filter is rebuilt from the table
+        assertThat(loginNameFilter.mightExist("ana")).isTrue();
+        assertThat(loginNameFilter.mightExist("bob")).isTrue();
+
+        loginNameFilter.onApplicationReady();
+
+        assertThat(loginNameFilter.mightExist("ana")).isFalse();
+        assertThat(loginNameFilter.mightExist("bob")).isFalse();
+        assertThat(loginNameFilter.mightExist("cleo")).isTrue();
+    }
+
+    @Test
+    void namesCreatedElsewhereAreFoundInTheDatabaseAndAdded() {
+        jdbcTemplate.update("INSERT INTO users (name, login_name, password, email, security_version, version) "
+                + "VALUES ('Dora', 'dora', 'unused', 'dora@example.com', 0, 0)");
+        double missed = counter("missed");
+
+        assertThat(loginNameFilter.mightExist("dora")).isTrue();
+        assertThat(loginNameFilter.mightExist("dora")).isTrue();
+        assertThat(counter("missed")).isEqualTo(missed + 1);
+    }
+
+    @Test
+    void filterHasNoFalseNegativesAndKeepsItsFalsePositiveRate() {
+        LoginNameFilter.BloomFilter filter = new LoginNameFilter.BloomFilter(10_000, 0.01);
+        for (int i = 0; i < 10_000; i++) {
+            filter.put("user " + i);
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(filter.mightContain("user " + i)).isTrue();
+            if (filter.mightContain("other " + i)) {
+                falsePositives++;
+            }
+        }
+        assertThat(falsePositives).isLessThan(200);
+        assertThat(filter.estimatedFalsePositiveRate()).isBetween(0.005, 0.02);
+    }
+
+    // Helper Methods
+
+    private static UserModel user(Long idUser, String name, String email) {
+        UserModel user = new UserModel();
+        user.setIdUser(idUser);
+        user.setName(name);
+        user.setPassword("Secret123!");
+        user.setEmail(email);
+        return user;
+    }
+
+    private double counter(String name) {
+        return meterRegistry.get(LOGIN_FILTER_METRIC_PREFIX + name).counter().count();
+    }
+}
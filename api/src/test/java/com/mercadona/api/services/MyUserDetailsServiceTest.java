@@ -0,0 +1,91 @@
+package com.mercadona.api.services;
+
+import com.mercadona.api.models.UserMatch;
+import com.mercadona.api.models.UserModel;
+import com.mercadona.api.models.UserView;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Invalidates the cached principals, and the other in-memory views of the users, only once a change commits:
+ * a lookup from another request that runs before the commit still reads the previous row.
+ */
+@SpringBootTest
+@ActiveProfiles("h2")
+class MyUserDetailsServiceTest {
+
+    @Autowired
+    private MyUserDetailsService myUserDetailsService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private UserSearchIndex userSearchIndex;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Long idUser;
+
+    @BeforeEach
+    void registerUser() {
+        jdbcTemplate.update("DELETE FROM users");
+        idUser = userService.register(user("Ana", "ana@example.com")).idUser();
+    }
+
+    @Test
+    void lookupRacingADeleteDoesNotKeepThePrincipal() {
+        transactionTemplate.executeWithoutResult(status -> {
+            assertThat(userService.deleteUser(idUser)).isTrue();
+
+            // Another request authenticates before the delete commits, and caches the principal again
+            assertThat(CompletableFuture.supplyAsync(() -> myUserDetailsService.loadPrincipalByUsername("Ana"))
+                    .join().getUsername()).isEqualTo("Ana");
+        });
+
+        assertThatThrownBy(() -> myUserDetailsService.loadPrincipalByUsername("Ana"))
+                .isInstanceOf(UsernameNotFoundException.class);
+    }
+
+    @Test
+    void renameRolledBackIsNotApplied() {
+        assertThat(myUserDetailsService.loadPrincipalByUsername("Ana").getUsername()).isEqualTo("Ana");
+
+        transactionTemplate.executeWithoutResult(status -> {
+            UserModel renamed = user("Bea", "ana@example.com");
+            renamed.setIdUser(idUser);
+            userService.setUser(renamed);
+            status.setRollbackOnly();
+        });
+
+        assertThat(userSearchIndex.search("Bea", 10)).isEmpty();
+        assertThat(userSearchIndex.search("Ana", 10)).extracting(UserMatch::idUser).contains(idUser);
+        assertThat(myUserDetailsService.loadPrincipalByUsername("Ana").getUsername()).isEqualTo("Ana");
+        assertThat(userService.getUserById(idUser)).map(UserView::name).contains("Ana");
+    }
+
+    // Helper Methods
+
+    private static UserModel user(String name, String email) {
+        UserModel user = new UserModel();
+        user.setName(name);
+        user.setPassword("Secret123!");
+        user.setEmail(email);
+        return user;
+    }
+}
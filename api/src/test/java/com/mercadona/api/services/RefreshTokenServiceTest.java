@@ -0,0 +1,98 @@
+package com.mercadona.api.services;
+
+import com.mercadona.api.exceptions.InvalidRefreshTokenException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Rotates refresh tokens against the H2 database: a token can be exchanged once, and presenting it again
+ * revokes its whole family, including the tokens issued after it.
+ */
+@SpringBootTest
+@ActiveProfiles("h2")
+class RefreshTokenServiceTest {
+
+    private static final long ID_USER = 1L;
+    private static final int CONCURRENT_ROTATIONS = 4;
+
+    @Autowired
+    private RefreshTokenService refreshTokenService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void clearTokens() {
+        jdbcTemplate.update("DELETE FROM refresh_tokens");
+    }
+
+    @Test
+    void replayingARotatedTokenRevokesTheFamily() throws InvalidRefreshTokenException {
+        String first = refreshTokenService.issue(ID_USER);
+        String second = refreshTokenService.rotate(first).refreshToken();
+        String third = refreshTokenService.rotate(second).refreshToken();
+        String otherFamily = refreshTokenService.issue(ID_USER);
+
+        assertThatThrownBy(() -> refreshTokenService.rotate(first))
+                .isInstanceOf(InvalidRefreshTokenException.class)
+                .hasMessageContaining("reuse");
+
+        // The family stays revoked although the rejection threw, and the other login of the user is untouched
+        assertThatThrownBy(() -> refreshTokenService.rotate(third))
+                .isInstanceOf(InvalidRefreshTokenException.class)
+                .hasMessageContaining("Revoked");
+        assertThat(refreshTokenService.rotate(otherFamily).idUser()).isEqualTo(ID_USER);
+    }
+
+    @Test
+    void concurrentRotationsOfATokenHaveASingleWinner() throws Exception {
+        String token = refreshTokenService.issue(ID_USER);
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_ROTATIONS);
+        List<Future<String>> rotations = new ArrayList<>();
+
+        try {
+            for (int i = 0; i < CONCURRENT_ROTATIONS; i++) {
+                rotations.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        return refreshTokenService.rotate(token).refreshToken();
+                    } catch (InvalidRefreshTokenException e) {
+                        return null;
+                    }
+                }));
+            }
+            start.countDown();
+
+            List<String> issued = new ArrayList<>();
+            for (Future<String> rotation : rotations) {
+                String refreshToken = rotation.get();
+                if (refreshToken != null) {
+                    issued.add(refreshToken);
+                }
+            }
+
+            assertThat(issued).hasSize(1);
+            // The losers saw the token used, so the token of the winner was revoked with its family
+            assertThatThrownBy(() -> refreshTokenService.rotate(issued.get(0)))
+                    .isInstanceOf(InvalidRefreshTokenException.class)
+                    .hasMessageContaining("Revoked");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.mercadona.api.services;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TokenRevocationListTest {
+
+    private static final Duration TICK = Duration.ofMillis(5);
+    private static final Duration HORIZON = Duration.ofMinutes(15);
+
+    @TempDir
+    private Path directory;
+
+    @Test
+    void revocationsSurviveConcurrentCompactions() throws Exception {
+        Path journal = directory.resolve("revoked-tokens.journal");
+        int threads = 4;
+        int revocationsPerThread = 20_000;
+
+        TokenRevocationList revocations = new TokenRevocationList(TICK, HORIZON, journal);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long firstJti = (t + 1) * 1_000_000L;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < revocationsPerThread; i++) {
+                    // Most revocations expire right away, so the ticker keeps compacting the journal
+                    long expiresAt = System.currentTimeMillis() + (isLongLived(i) ? HORIZON.toMillis() : 1);
+                    revocations.revoke(firstJti + i, expiresAt);
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        revocations.destroy();
+        assertThat(Files.size(journal)).as("compacted journal").isLessThan(threads * revocationsPerThread * 16L);
+
+        TokenRevocationList reopened = new TokenRevocationList(TICK, HORIZON, journal);
+        try {
+            for (int t = 0; t < threads; t++) {
+                long firstJti = (t + 1) * 1_000_000L;
+                for (int i = 0; i < revocationsPerThread; i++) {
+                    if (isLongLived(i)) {
+                        assertThat(reopened.isRevoked(firstJti + i)).as("jti %d", firstJti + i).isTrue();
+                    }
+                }
+            }
+        } finally {
+            reopened.destroy();
+        }
+    }
+
+    @Test
+    void dropsRevocationsRightAfterTheirTokensExpire() throws Exception {
+        long tickMillis = 100;
+        TokenRevocationList revocations = new TokenRevocationList(Duration.ofMillis(tickMillis), HORIZON, null);
+        try {
+            // The last millisecond of a tick: the tick it falls in comes before the token expires
+            long expiresAt = (System.currentTimeMillis() / tickMillis + 10) * tickMillis - 1;
+            assertThat(revocations.revoke(42, expiresAt)).isTrue();
+            assertThat(revocations.isRevoked(42)).isTrue();
+
+            // Well before a whole turn of the wheel, which would take the horizon
+            long deadline = expiresAt + 10 * tickMillis;
+            while (revocations.size() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(tickMillis / 10);
+            }
+            assertThat(revocations.size()).isZero();
+            assertThat(revocations.isRevoked(42)).isFalse();
+        } finally {
+            revocations.destroy();
+        }
+    }
+
+    private static boolean isLongLived(int i) {
+        return i % 10 == 0;
+    }
+}
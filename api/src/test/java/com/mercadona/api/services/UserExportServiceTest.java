@@ -0,0 +1,98 @@
+package com.mercadona.api.services;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Exports a users table larger than the heap of the test JVM (-Xmx128m, see the surefire configuration),
+ * from a file-backed H2 database, so the export only passes if it streams.
+ */
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:file:./target/export-test/users;MODE=MySQL;DATABASE_TO_LOWER=TRUE",
+        "spring.datasource.driver-class-name=org.h2.Driver",
+        "spring.datasource.username=sa",
+        "spring.datasource.password=",
+        "spring.jpa.database=H2",
+        "spring.jpa.show-sql=false",
+        "spring.jpa.hibernate.ddl-auto=create-drop"
+})
+class UserExportServiceTest {
+
+    private static final int USERS = 300_000;
+    private static final int BATCH_SIZE = 20_000;
+    // Only the password hash contains '$', so a '$' in the export means the hash leaked
+    private static final String PASSWORD_HASH = "$2a$10$abcdefghijklmnopqrstuuLC2VqSjS1dQHfZ3zLpOi7JuP8yqS5Wy";
+
+    @Autowired
+    private UserExportService userExportService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void seedUsers() {
+        for (int from = 1; from <= USERS; from += BATCH_SIZE) {
+            jdbcTemplate.update("INSERT INTO users (name, password, email) "
+                            + "SELECT CONCAT('user ', \"X\", ' ', REPEAT('n', 200)), ?, "
+                            + "CONCAT('user', \"X\", '@', REPEAT('e', 230), '.example.com') FROM SYSTEM_RANGE(?, ?)",
+                    PASSWORD_HASH, from, Math.min(from + BATCH_SIZE - 1, USERS));
+        }
+    }
+
+    @Test
+    void exportsEveryUserWithinABoundedHeap() throws IOException {
+        NdjsonCounter counter = new NdjsonCounter();
+
+        userExportService.exportUsers(counter);
+
+        assertThat(counter.bytes).isGreaterThan(Runtime.getRuntime().maxMemory());
+        assertThat(counter.lines).isEqualTo(USERS);
+        assertThat(counter.firstLine()).startsWith("{\"idUser\":1,\"name\":\"user 1 ");
+        assertThat(counter.dollarSigns).isZero();
+    }
+
+    /**
+     * Counts the exported bytes and lines without keeping them, apart from the first line.
+     */
+    private static class NdjsonCounter extends OutputStream {
+
+        private final ByteArrayOutputStream firstLine = new ByteArrayOutputStream();
+        private long bytes;
+        private long lines;
+        private long dollarSigns;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+            if (b == '\n') {
+                lines++;
+            } else if (lines == 0) {
+                firstLine.write(b);
+            }
+            if (b == '$') {
+                dollarSigns++;
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                write(b[i]);
+            }
+        }
+
+        String firstLine() {
+            return firstLine.toString(StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.mercadona.api.services;
+
+import com.mercadona.api.models.ImportReport;
+import com.mercadona.api.models.ImportRowResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static com.mercadona.api.constants.ApiConstants.TEXT_CSV_VALUE;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Imports CSV documents in chunks of 3 rows into H2: a chunk is inserted in one transaction, so a row
+ * that violates a unique constraint rolls back its whole chunk, and only that chunk.
+ */
+@SpringBootTest(properties = "users.import.batch-size=3")
+@ActiveProfiles("h2")
+class UserImportServiceTest {
+
+    private static final String HEADER = "name,email,password\n";
+
+    @Autowired
+    private UserImportService userImportService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void seedUsers() {
+        jdbcTemplate.update("DELETE FROM users");
+        jdbcTemplate.update("INSERT INTO users (name, login_name, password, email, security_version, version) "
+                + "VALUES ('Zoe', 'zoe', 'unused', 'taken@example.com', 0, 0)");
+    }
+
+    @Test
+    void rowViolatingAUniqueConstraintRollsBackItsChunkOnly() throws IOException {
+        ImportReport report = importCsv(HEADER
+                + "Ana,ana@example.com,Secret123!\n"
+                + "Bob,bob@example.com,Secret123!\n"
+                + "Carl,carl@example.com,Secret123!\n"
+                + "Dora,dora@example.com,Secret123!\n"
+                + "Erin,taken@example.com,Secret123!\n"
+                + "Fred,fred@example.com,Secret123!\n"
+                + "Gus,gus@example.com,Secret123!\n");
+
+        assertThat(report.total()).isEqualTo(7);
+        assertThat(report.imported()).isEqualTo(4);
+        assertThat(report.failed()).isEqualTo(3);
+        assertThat(report.rows()).extracting(ImportRowResult::row).containsExactly(1, 2, 3, 4, 5, 6, 7);
+        for (ImportRowResult row : report.rows().subList(3, 6)) {
+            assertThat(row.idUser()).as("row %d", row.row()).isNull();
+            assertThat(row.error()).as("row %d", row.row()).startsWith("Chunk rolled back");
+        }
+        for (int i : new int[]{0, 1, 2, 6}) {
+            ImportRowResult row = report.rows().get(i);
+            assertThat(row.error()).as("row %d", row.row()).isNull();
+            assertThat(jdbcTemplate.queryForObject("SELECT name FROM users WHERE id_user = ?", String.class,
+                    row.idUser())).isIn("Ana", "Bob", "Carl", "Gus");
+        }
+
+        // Dora and Fred were inserted before the failing row, and rolled back with it
+        assertThat(jdbcTemplate.queryForList("SELECT name FROM users ORDER BY name", String.class))
+                .containsExactly("Ana", "Bob", "Carl", "Gus", "Zoe");
+    }
+
+    @Test
+    void rowsAreValidatedWithTheUserConstraints() throws IOException {
+        ImportReport report = importCsv(HEADER
+                + "Ana,ana@@example.com,Secret123!\n"
+                + "Bob,bob example.com,Secret123!\n"
+                + ",carl@example.com,Secret123!\n"
+                + "Dora,dora@example.com,short\n"
+                + "Erin,erin@example.com,\n"
+                + "Fred,fred@example.com,Secret123!\n"
+                + "FRED,fred2@example.com,Secret123!\n");
+
+        assertThat(report.rows()).extracting(ImportRowResult::error).containsExactly(
+                "Email should be valid",
+                "Email should be valid",
+                "Name cannot be empty",
+                "Password must be at least 8 characters long",
+                "Password must be at least 8 characters long",
+                null,
+                "Duplicate name in import");
+        assertThat(report.imported()).isEqualTo(1);
+    }
+
+    // Helper Methods
+
+    private ImportReport importCsv(String csv) throws IOException {
+        return userImportService.importUsers(TEXT_CSV_VALUE,
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,164 @@
+package com.mercadona.api.bench;
+
+import com.mercadona.api.config.JwtConfig;
+import com.mercadona.api.config.JwtFilter;
+import com.mercadona.api.config.LoginFilterConfig;
+import com.mercadona.api.config.UserDetailsConfig;
+import com.mercadona.api.models.UserModel;
+import com.mercadona.api.models.UserPrincipal;
+import com.mercadona.api.repositories.IUserRepository;
+import com.mercadona.api.services.JWTService;
+import com.mercadona.api.services.JwtKeyRing;
+import com.mercadona.api.services.LoginNameFilter;
+import com.mercadona.api.services.MyUserDetailsService;
+import com.mercadona.api.services.SecurityVersionCache;
+import com.mercadona.api.services.TokenRevocationList;
+import com.mercadona.api.services.VerifiedTokenCache;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import io.micrometer.prometheusmetrics.PrometheusConfig;
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static com.mercadona.api.constants.ApiConstants.BEARER_TOKEN_AUTH_TYPE;
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+
+/**
+ * Measures a full JwtFilter pass over a mocked authenticated request: header parsing, token verification,
+ * principal lookup and security context setup. The repository is an in-memory stub, so the score is the
+ * filter's own cost. "cold" disables both caches, "warm" enables the verified token and principal caches.
+ * "noop" metrics use a registry without backends; "prometheus" records every timer in a Prometheus registry
+ * with percentile histograms, as in production, so the difference is the overhead of the metrics.
+ * "user" authentication loads the principal as by default; "claims" enables the claims-only mode, where
+ * the principal is built from the token claims and the principal lookup is skipped.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtFilterBenchmark {
+
+    private static final String USERNAME = "bench-user";
+
+    @Param({"cold", "warm"})
+    public String caches;
+
+    @Param({"noop", "prometheus"})
+    public String metrics;
+
+    @Param({"user", "claims"})
+    public String authentication;
+
+    private JwtFilter filter;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @Setup
+    public void setUp() {
+        boolean warm = "warm".equals(caches);
+
+        MeterRegistry meterRegistry = meterRegistry();
+        JwtConfig jwtConfig = jwtConfig();
+        ReflectionTestUtils.setField(jwtConfig, "claimsOnly", "claims".equals(authentication));
+        JWTService jwtService = new JWTService(new VerifiedTokenCache(warm, 1_000), keyRing(), jwtConfig, meterRegistry);
+        UserDetailsConfig userDetailsConfig = new UserDetailsConfig();
+        ReflectionTestUtils.setField(userDetailsConfig, "cacheMaximumSize", warm ? 1_000L : 0L);
+        ReflectionTestUtils.setField(userDetailsConfig, "cacheTtl", Duration.ofMinutes(5));
+        // The login name filter is never built, every name may exist and reaches the stub repository
+        LoginNameFilter loginNameFilter = new LoginNameFilter(null, new LoginFilterConfig(), null, meterRegistry);
+        MyUserDetailsService userDetailsService =
+                new MyUserDetailsService(userRepository(), loginNameFilter, userDetailsConfig, meterRegistry);
+
+        TokenRevocationList revocations = new TokenRevocationList(Duration.ofSeconds(1), Duration.ofMinutes(15), null);
+        filter = new JwtFilter(jwtService, userDetailsService, new SecurityVersionCache(jwtConfig, null), revocations,
+                jwtConfig, meterRegistry);
+        request = new MockHttpServletRequest("GET", "/users/1");
+        request.addHeader(AUTHORIZATION, BEARER_TOKEN_AUTH_TYPE
+                + jwtService.generateToken(new UserPrincipal(1L, USERNAME, null, 0)));
+        response = new MockHttpServletResponse();
+    }
+
+    @Benchmark
+    public Authentication filterPass() throws Exception {
+        // A fresh chain per call, MockFilterChain can only be invoked once
+        FilterChain chain = new MockFilterChain();
+        try {
+            filter.doFilter(request, response, chain);
+            return SecurityContextHolder.getContext().getAuthentication();
+        } finally {
+            SecurityContextHolder.clearContext();
+            // OncePerRequestFilter marks the request as filtered, which would skip the next pass
+            request.clearAttributes();
+        }
+    }
+
+    private MeterRegistry meterRegistry() {
+        if ("noop".equals(metrics)) {
+            return new CompositeMeterRegistry();
+        }
+
+        PrometheusMeterRegistry registry = new PrometheusMeterRegistry(PrometheusConfig.DEFAULT);
+        registry.config().meterFilter(new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                return DistributionStatisticConfig.builder().percentilesHistogram(true).build().merge(config);
+            }
+        });
+        return registry;
+    }
+
+    /**
+     * Stub repository that only answers the login lookup, with a fixed user.
+     */
+    private static IUserRepository userRepository() {
+        UserModel user = new UserModel();
+        user.setIdUser(1L);
+        user.setName(USERNAME);
+        user.setPassword("unused");
+        user.setEmail(USERNAME + "@example.com");
+
+        return (IUserRepository) Proxy.newProxyInstance(IUserRepository.class.getClassLoader(),
+                new Class<?>[]{IUserRepository.class}, (proxy, method, args) -> {
+                    if ("findByLoginName".equals(method.getName())) {
+                        return UserModel.normalizeLoginName(user.getName()).equals(args[0]) ? user : null;
+                    }
+                    throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static JwtConfig jwtConfig() {
+        JwtConfig jwtConfig = new JwtConfig();
+        ReflectionTestUtils.setField(jwtConfig, "accessTokenTtl", Duration.ofMinutes(15));
+        return jwtConfig;
+    }
+
+    private static JwtKeyRing keyRing() {
+        return new JwtKeyRing(null, Duration.ZERO, Duration.ZERO, Duration.ofMinutes(1), Duration.ofMinutes(15));
+    }
+}
@@ -0,0 +1,55 @@
+package com.mercadona.api.bench;
+
+import com.mercadona.api.config.JwtConfig;
+import com.mercadona.api.services.JWTService;
+import com.mercadona.api.services.JwtKeyRing;
+import com.mercadona.api.services.VerifiedTokenCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the token issued on every login: claims building, HMAC-SHA256 signature and compaction.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtGenerationBenchmark {
+
+    private JWTService jwtService;
+
+    @Setup
+    public void setUp() {
+        jwtService = new JWTService(new VerifiedTokenCache(false, 0), keyRing(), jwtConfig(), new SimpleMeterRegistry());
+    }
+
+    @Benchmark
+    public String generateToken() {
+        return jwtService.generateToken("bench-user");
+    }
+
+    private static JwtConfig jwtConfig() {
+        JwtConfig jwtConfig = new JwtConfig();
+        ReflectionTestUtils.setField(jwtConfig, "accessTokenTtl", Duration.ofMinutes(15));
+        return jwtConfig;
+    }
+
+    private static JwtKeyRing keyRing() {
+        return new JwtKeyRing(null, Duration.ZERO, Duration.ZERO, Duration.ofMinutes(1), Duration.ofMinutes(15));
+    }
+}
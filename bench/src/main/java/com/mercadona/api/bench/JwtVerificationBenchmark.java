@@ -0,0 +1,95 @@
+package com.mercadona.api.bench;
+
+import com.mercadona.api.config.JwtConfig;
+import com.mercadona.api.models.VerifiedToken;
+import com.mercadona.api.services.JWTService;
+import com.mercadona.api.services.JwtKeyRing;
+import com.mercadona.api.services.VerifiedTokenCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the per-request token verification done by JwtFilter before and after the single-parse pipeline.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JwtVerificationBenchmark {
+
+    private static final String USERNAME = "bench-user";
+
+    private LegacyJwtService legacyService;
+    private JWTService jwtService;
+    private JWTService cachedJwtService;
+    private String legacyToken;
+    private String token;
+    private String cachedToken;
+    private UserDetails userDetails;
+
+    @Setup
+    public void setUp() {
+        legacyService = new LegacyJwtService();
+        jwtService = new JWTService(new VerifiedTokenCache(false, 0), keyRing(), jwtConfig(), new SimpleMeterRegistry());
+        cachedJwtService = new JWTService(new VerifiedTokenCache(true, 1_000), keyRing(), jwtConfig(),
+                new SimpleMeterRegistry());
+        legacyToken = legacyService.generateToken(USERNAME);
+        token = jwtService.generateToken(USERNAME);
+        cachedToken = cachedJwtService.generateToken(USERNAME);
+        userDetails = User.withUsername(USERNAME).password("unused").roles("USER").build();
+    }
+
+    /**
+     * Original filter path: extractUserName followed by validateToken, three parses in total.
+     */
+    @Benchmark
+    public boolean legacyThreeParses() {
+        String username = legacyService.extractUserName(legacyToken);
+        return username != null && legacyService.validateToken(legacyToken, userDetails);
+    }
+
+    /**
+     * Current filter path: one parse with the prebuilt parser and cached key.
+     */
+    @Benchmark
+    public boolean singleParse() {
+        VerifiedToken verified = jwtService.verify(token);
+        return jwtService.validateToken(verified, userDetails);
+    }
+
+    /**
+     * Current filter path with the verified token cache enabled, the token is resent by the client.
+     */
+    @Benchmark
+    public boolean cachedVerify() {
+        VerifiedToken verified = cachedJwtService.verify(cachedToken);
+        return cachedJwtService.validateToken(verified, userDetails);
+    }
+
+    private static JwtConfig jwtConfig() {
+        JwtConfig jwtConfig = new JwtConfig();
+        ReflectionTestUtils.setField(jwtConfig, "accessTokenTtl", Duration.ofMinutes(15));
+        return jwtConfig;
+    }
+
+    private static JwtKeyRing keyRing() {
+        return new JwtKeyRing(null, Duration.ZERO, Duration.ZERO, Duration.ofMinutes(1), Duration.ofMinutes(15));
+    }
+}
@@ -0,0 +1,384 @@
+package com.mercadona.api.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.mercadona.api.ApiApplication;
+import com.mercadona.api.models.UserModel;
+import com.mercadona.api.services.JWTService;
+import com.mercadona.api.services.LoginNameFilter;
+import com.mercadona.api.services.UserSearchIndex;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.springframework.http.HttpHeaders.AUTHORIZATION;
+import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
+import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
+
+/**
+ * End-to-end load test of the API against an embedded H2 database in MySQL mode, runnable offline.
+ * Boots the application in-process on a random port, seeds the users table, and drives a mixed workload
+ * of login, get by ID, update and list requests at a fixed rate (open model: requests are sent on
+ * schedule whether or not the previous ones have finished). Latency is measured from the scheduled
+ * send time, so a stalled server shows up in the percentiles instead of silently lowering the rate.
+ * The request mix is drawn from a seeded random generator, so two runs with the same settings
+ * send the same sequence of requests and their results can be compared across commits.
+ * <p>
+ * Run with: mvn -pl bench exec:exec@load-test [-Dload.rate=100 -Dload.duration=60s ...]
+ * <p>
+ * Settings (system properties):
+ * <ul>
+ *     <li>load.users: users seeded before the run (default 10000)</li>
+ *     <li>load.rate: requests per second (default 100)</li>
+ *     <li>load.warmup / load.duration: unrecorded warm-up and recorded run (default 10s / 60s)</li>
+ *     <li>load.mix: relative weights of each endpoint (default login=1,get=60,update=10,list=29)</li>
+ *     <li>load.seed: seed of the request mix (default 42)</li>
+ *     <li>load.result-file: JSON report (default target/load-test-result.json)</li>
+ * </ul>
+ * Any program argument is passed to the application, e.g. --spring.threads.virtual.enabled=true.
+ */
+public class LoadTest {
+
+    private static final String PASSWORD = "load-test-password";
+    private static final int TOKEN_POOL_SIZE = 1_000;
+    private static final Duration TOKEN_REFRESH_PERIOD = Duration.ofSeconds(30);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+    private static final long MAX_RECORDED_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final double[] PERCENTILES = {50, 95, 99, 99.9};
+
+    /**
+     * Endpoints of the mixed workload.
+     */
+    enum Endpoint {
+        LOGIN("POST /auth/login"),
+        GET("GET /users/{id}"),
+        UPDATE("PUT /users/{id}"),
+        LIST("GET /users");
+
+        private final String label;
+
+        Endpoint(String label) {
+            this.label = label;
+        }
+    }
+
+    private final int users;
+    private final int rate;
+    private final Duration warmup;
+    private final Duration duration;
+    private final Map<Endpoint, Integer> mix;
+    private final long seed;
+    private final File resultFile;
+
+    private final HttpClient httpClient;
+    private final Map<Endpoint, EndpointStats> stats = new EnumMap<>(Endpoint.class);
+    private final AtomicReferenceArray<String> tokens = new AtomicReferenceArray<>(TOKEN_POOL_SIZE);
+    private String baseUrl;
+
+    LoadTest() {
+        this.users = Integer.getInteger("load.users", 10_000);
+        this.rate = Integer.getInteger("load.rate", 100);
+        this.warmup = parseDuration(System.getProperty("load.warmup", "10s"));
+        this.duration = parseDuration(System.getProperty("load.duration", "60s"));
+        this.mix = parseMix(System.getProperty("load.mix", "login=1,get=60,update=10,list=29"));
+        this.seed = Long.getLong("load.seed", 42L);
+        this.resultFile = new File(System.getProperty("load.result-file", "target/load-test-result.json"));
+
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        for (Endpoint endpoint : Endpoint.values()) {
+            stats.put(endpoint, new EndpointStats());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] appArgs = Arrays.stream(args).filter(arg -> !arg.isBlank()).toArray(String[]::new);
+
+        new LoadTest().run(appArgs);
+    }
+
+    void run(String[] appArgs) throws Exception {
+        try (ConfigurableApplicationContext context = startApplication(appArgs)) {
+            baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort();
+            seedUsers(context);
+
+            JWTService jwtService = context.getBean(JWTService.class);
+            refreshTokens(jwtService);
+            Thread tokenRefresher = Thread.ofPlatform().daemon().name("load-test-tokens").start(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    LockSupport.parkNanos(TOKEN_REFRESH_PERIOD.toNanos());
+                    refreshTokens(jwtService);
+                }
+            });
+
+            System.out.printf("Load test: %d users, %d req/s, warm-up %s, run %s, mix %s, seed %d%n",
+                    users, rate, warmup, duration, mix, seed);
+            long elapsedNanos = drive();
+            tokenRefresher.interrupt();
+
+            Map<String, Object> report = report(elapsedNanos);
+            print(report);
+            write(report);
+        }
+    }
+
+    // Helper Methods
+
+    /**
+     * Starts the application on a random port against H2. The overrides are passed as command line
+     * arguments, which take precedence over the application.properties of the api module.
+     */
+    private static ConfigurableApplicationContext startApplication(String[] appArgs) {
+        List<String> args = new ArrayList<>(List.of(
+                "--spring.datasource.url=jdbc:h2:mem:loadtest;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jpa.database=H2",
+                "--spring.jpa.show-sql=false",
+                "--server.port=0",
+                "--management.server.port=0",
+                "--jwt.keys.file=",
+                "--jwt.revocation.journal=",
+                "--logging.level.root=WARN"));
+        args.addAll(Arrays.asList(appArgs));
+
+        return new SpringApplicationBuilder(ApiApplication.class).run(args.toArray(String[]::new));
+    }
+
+    /**
+     * Inserts the users with one JDBC batch per thousand rows. All users share one password hash,
+     * computed with the application encoder, so logins pay the production bcrypt cost.
+     */
+    private void seedUsers(ConfigurableApplicationContext context) {
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        String hash = context.getBean(PasswordEncoder.class).encode(PASSWORD);
+
+        List<Object[]> rows = new ArrayList<>(1_000);
+        for (int i = 1; i <= users; i++) {
+            rows.add(new Object[]{userName(i), UserModel.normalizeLoginName(userName(i)), hash, email(i, false)});
+            if (rows.size() == 1_000 || i == users) {
+                jdbcTemplate.batchUpdate("INSERT INTO users (name, login_name, password, email) VALUES (?, ?, ?, ?)", rows);
+                rows.clear();
+            }
+        }
+
+        // The rows bypass the application, so the in-memory views built at startup must be rebuilt
+        context.getBean(LoginNameFilter.class).onApplicationReady();
+        context.getBean(UserSearchIndex.class).onApplicationReady();
+    }
+
+    private void refreshTokens(JWTService jwtService) {
+        for (int i = 0; i < TOKEN_POOL_SIZE; i++) {
+            tokens.set(i, jwtService.generateToken(userName(i % users + 1)));
+        }
+    }
+
+    /**
+     * Sends the requests on schedule for the warm-up and the recorded run.
+     *
+     * @return the duration of the recorded run, in nanoseconds
+     */
+    private long drive() throws InterruptedException {
+        Random random = new Random(seed);
+        int totalWeight = mix.values().stream().mapToInt(Integer::intValue).sum();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long warmupRequests = warmup.toSeconds() * rate;
+        long totalRequests = warmupRequests + duration.toSeconds() * rate;
+
+        long start = System.nanoTime();
+        long recordingStart = start + warmupRequests * intervalNanos;
+        try (ExecutorService senders = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (long i = 0; i < totalRequests; i++) {
+                long scheduledAt = start + i * intervalNanos;
+                boolean recorded = i >= warmupRequests;
+                Endpoint endpoint = pick(random.nextInt(totalWeight));
+                int userIdx = random.nextInt(users) + 1;
+                int tokenIdx = random.nextInt(TOKEN_POOL_SIZE);
+                boolean flag = random.nextBoolean();
+
+                long wait = scheduledAt - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                senders.execute(() -> send(endpoint, userIdx, tokenIdx, flag, scheduledAt, recorded));
+            }
+        }
+        return System.nanoTime() - recordingStart;
+    }
+
+    private Endpoint pick(int weight) {
+        for (Map.Entry<Endpoint, Integer> entry : mix.entrySet()) {
+            weight -= entry.getValue();
+            if (weight < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private void send(Endpoint endpoint, int userIdx, int tokenIdx, boolean flag, long scheduledAt, boolean recorded) {
+        HttpRequest.Builder request = HttpRequest.newBuilder().timeout(REQUEST_TIMEOUT);
+        String bearer = "Bearer " + tokens.get(tokenIdx);
+
+        switch (endpoint) {
+            case LOGIN -> request.uri(URI.create(baseUrl + "/auth/login"))
+                    .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+                    .POST(HttpRequest.BodyPublishers.ofString(
+                            "{\"name\":\"" + userName(userIdx) + "\",\"password\":\"" + PASSWORD + "\"}"));
+            case GET -> request.uri(URI.create(baseUrl + "/users/" + userIdx))
+                    .header(AUTHORIZATION, bearer)
+                    .GET();
+            // The name is kept, so the tokens issued to the user stay valid; the email alternates
+            case UPDATE -> request.uri(URI.create(baseUrl + "/users/" + userIdx))
+                    .header(AUTHORIZATION, bearer)
+                    .header(CONTENT_TYPE, APPLICATION_JSON_VALUE)
+                    .PUT(HttpRequest.BodyPublishers.ofString(
+                            "{\"name\":\"" + userName(userIdx) + "\",\"email\":\"" + email(userIdx, flag) + "\"}"));
+            case LIST -> request.uri(URI.create(baseUrl + "/users?name=" + (flag ? "user1" : "user")))
+                    .header(AUTHORIZATION, bearer)
+                    .GET();
+        }
+
+        int status;
+        try {
+            status = httpClient.send(request.build(), HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (IOException e) {
+            status = -1;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+
+        if (recorded) {
+            stats.get(endpoint).record(status, System.nanoTime() - scheduledAt);
+        }
+    }
+
+    private Map<String, Object> report(long elapsedNanos) {
+        double elapsedSeconds = elapsedNanos / 1e9;
+
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("users", users);
+        settings.put("rate", rate);
+        settings.put("warmupSeconds", warmup.toSeconds());
+        settings.put("durationSeconds", duration.toSeconds());
+        settings.put("mix", mix);
+        settings.put("seed", seed);
+        settings.put("jvm", System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+        settings.put("processors", Runtime.getRuntime().availableProcessors());
+
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        for (Endpoint endpoint : Endpoint.values()) {
+            EndpointStats endpointStats = stats.get(endpoint);
+            Histogram histogram = endpointStats.latencies;
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("requests", histogram.getTotalCount());
+            result.put("errors", endpointStats.errors.get());
+            result.put("throughput", round(histogram.getTotalCount() / elapsedSeconds));
+            for (double percentile : PERCENTILES) {
+                result.put("p" + String.valueOf(percentile).replace(".0", "").replace(".", "") + "Millis",
+                        round(histogram.getValueAtPercentile(percentile) / 1e6));
+            }
+            result.put("maxMillis", round(histogram.getMaxValue() / 1e6));
+            endpoints.put(endpoint.label, result);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("settings", settings);
+        report.put("endpoints", endpoints);
+        return report;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void print(Map<String, Object> report) {
+        System.out.printf("%n%-18s %9s %7s %9s %9s %9s %9s %9s %9s%n",
+                "Endpoint", "Requests", "Errors", "Req/s", "p50 ms", "p95 ms", "p99 ms", "p99.9 ms", "max ms");
+        ((Map<String, Map<String, Object>>) report.get("endpoints")).forEach((endpoint, result) ->
+                System.out.printf("%-18s %9s %7s %9s %9s %9s %9s %9s %9s%n", endpoint,
+                        result.get("requests"), result.get("errors"), result.get("throughput"),
+                        result.get("p50Millis"), result.get("p95Millis"), result.get("p99Millis"),
+                        result.get("p999Millis"), result.get("maxMillis")));
+    }
+
+    private void write(Map<String, Object> report) throws IOException {
+        File parent = resultFile.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(resultFile, report);
+        System.out.println("\nLoad test result is saved to " + resultFile.getAbsolutePath());
+    }
+
+    private static String userName(int idx) {
+        return "user" + idx;
+    }
+
+    private static String email(int idx, boolean alternate) {
+        return "user" + idx + (alternate ? "+alt" : "") + "@example.com";
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    private static Duration parseDuration(String value) {
+        return Duration.parse("PT" + value.toUpperCase());
+    }
+
+    private static Map<Endpoint, Integer> parseMix(String value) {
+        Map<Endpoint, Integer> weights = new EnumMap<>(Endpoint.class);
+        for (String entry : value.split(",")) {
+            String[] parts = entry.split("=");
+            weights.put(Endpoint.valueOf(parts[0].trim().toUpperCase()), Integer.parseInt(parts[1].trim()));
+        }
+        return weights;
+    }
+
+    /**
+     * Latencies and error count of one endpoint, shared by all the sender threads.
+     */
+    private static final class EndpointStats {
+
+        private final Histogram latencies = new ConcurrentHistogram(MAX_RECORDED_NANOS, 3);
+        private final AtomicLong errors = new AtomicLong();
+
+        private void record(int status, long latencyNanos) {
+            latencies.recordValue(Math.min(latencyNanos, MAX_RECORDED_NANOS));
+            if (status < 200 || status >= 300) {
+                errors.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.mercadona.api.bench;
+
+import com.mercadona.api.models.UserModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the login lookup as the users table grows, on a local H2 database in MySQL mode.
+ * "loginName" is the lookup used by the API: the typed name is normalized and searched through the
+ * unique index on login_name. "name" is the previous lookup, an equality on the unindexed name column.
+ * The indexed lookup should stay flat from ten thousand to a million rows; the scan grows linearly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoginLookupBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int rows;
+
+    @Param({"loginName", "name"})
+    public String lookup;
+
+    private Connection connection;
+    private PreparedStatement statement;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:h2:mem:login" + rows + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+
+        try (Statement ddl = connection.createStatement()) {
+            ddl.execute("CREATE TABLE IF NOT EXISTS users (id_user BIGINT PRIMARY KEY, name VARCHAR(255) NOT NULL, "
+                    + "login_name VARCHAR(255) UNIQUE, password VARCHAR(255) NOT NULL, email VARCHAR(255) NOT NULL UNIQUE)");
+            ddl.execute("DELETE FROM users");
+            ddl.execute("INSERT INTO users SELECT X, 'User' || X, 'user' || X, 'hash', 'user' || X || '@example.com' "
+                    + "FROM SYSTEM_RANGE(1, " + rows + ")");
+        }
+
+        statement = connection.prepareStatement("loginName".equals(lookup)
+                ? "SELECT id_user, name, password FROM users WHERE login_name = ?"
+                : "SELECT id_user, name, password FROM users WHERE name = ?");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws SQLException {
+        try (Statement ddl = connection.createStatement()) {
+            ddl.execute("DROP TABLE users");
+        }
+        connection.close();
+    }
+
+    @Benchmark
+    public long findUser() throws SQLException {
+        String typedName = "User" + ThreadLocalRandom.current().nextInt(1, rows + 1);
+        statement.setString(1, "loginName".equals(lookup) ? UserModel.normalizeLoginName(typedName) : typedName);
+
+        try (ResultSet resultSet = statement.executeQuery()) {
+            return resultSet.next() ? resultSet.getLong(1) : -1;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package com.mercadona.api.bench;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from launching the application to its first successful request, a 200 from
+ * /actuator/health, for the two builds of the api module, each in its own JVM:
+ * <ul>
+ *     <li>default: the executable war of mvn package</li>
+ *     <li>fast-startup: the plain jar of mvn -Pfast-startup package, with its Spring AOT bean definitions
+ *     and its AppCDS archive</li>
+ * </ul>
+ * Runs alternate between the builds, so a slower machine at some point penalizes both equally.
+ * The application runs against an in-memory H2 database in MySQL mode, added to the classpath of both builds.
+ * Health is polled on the management port, where the actuator is served, so the management server is started too.
+ * The JVM refuses to start if the CDS archive cannot be used, so the fast-startup runs always measure it.
+ * <p>
+ * Run with: mvn -pl api -Pfast-startup package -DskipTests, then mvn -pl bench exec:exec@startup [-Dstartup.runs=5]
+ * <p>
+ * Settings (system properties):
+ * <ul>
+ *     <li>startup.runs: launches of each build (default 5)</li>
+ *     <li>startup.war: executable war of the default build</li>
+ *     <li>startup.fast-startup-dir: output directory of the fast-startup build</li>
+ *     <li>startup.timeout: time to wait for the first successful request (default 120s)</li>
+ *     <li>startup.result-file: JSON report (default target/startup-result.json)</li>
+ * </ul>
+ * Any program argument is passed to the application.
+ */
+public class StartupBenchmark {
+
+    private static final String WAR_LAUNCHER = "org.springframework.boot.loader.launch.WarLauncher";
+    private static final String MAIN_CLASS = "com.mercadona.api.ApiApplication";
+    private static final String CDS_ARCHIVE = "application.jsa";
+    private static final long POLL_INTERVAL_MILLIS = 5;
+
+    private final int runs;
+    private final File war;
+    private final File fastStartupDir;
+    private final Duration timeout;
+    private final File resultFile;
+    private final File logFile;
+    private final String h2Jar;
+
+    private final HttpClient httpClient;
+
+    StartupBenchmark() throws Exception {
+        this.runs = Integer.getInteger("startup.runs", 5);
+        this.war = new File(System.getProperty("startup.war", "../api/target/api-0.0.1-SNAPSHOT.war"));
+        this.fastStartupDir = new File(System.getProperty("startup.fast-startup-dir", "../api/target/fast-startup"));
+        this.timeout = Duration.parse("PT" + System.getProperty("startup.timeout", "120s").toUpperCase());
+        this.resultFile = new File(System.getProperty("startup.result-file", "target/startup-result.json"));
+        this.logFile = new File(resultFile.getAbsoluteFile().getParentFile(), "startup-application.log");
+        this.h2Jar = new File(Class.forName("org.h2.Driver").getProtectionDomain().getCodeSource().getLocation().toURI())
+                .getAbsolutePath();
+
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(1))
+                .build();
+    }
+
+    public static void main(String[] args) throws Exception {
+        String[] appArgs = Arrays.stream(args).filter(arg -> !arg.isBlank()).toArray(String[]::new);
+
+        new StartupBenchmark().run(appArgs);
+    }
+
+    void run(String[] appArgs) throws Exception {
+        Map<String, Launch> builds = new LinkedHashMap<>();
+        builds.put("default", defaultCommand());
+        builds.put("fast-startup", fastStartupCommand());
+
+        Map<String, List<Double>> results = new LinkedHashMap<>();
+        builds.keySet().forEach(build -> results.put(build, new ArrayList<>()));
+
+        System.out.printf("Startup benchmark: %d runs per build, first request GET /actuator/health%n", runs);
+        for (int run = 1; run <= runs; run++) {
+            for (Map.Entry<String, Launch> build : builds.entrySet()) {
+                double millis = timeToFirstRequest(build.getValue(), appArgs);
+                results.get(build.getKey()).add(millis);
+                System.out.printf("  run %d %-13s %9.0f ms%n", run, build.getKey(), millis);
+            }
+        }
+
+        Map<String, Object> report = report(results);
+        print(report);
+        write(report);
+    }
+
+    // Helper Methods
+
+    private Launch defaultCommand() {
+        if (!war.isFile()) {
+            throw new IllegalStateException("Missing " + war.getAbsolutePath() + ", build it with mvn -pl api package");
+        }
+
+        return new Launch(List.of("-cp", war.getAbsolutePath() + File.pathSeparator + h2Jar, WAR_LAUNCHER), null);
+    }
+
+    /**
+     * The archive records the classpath of the training run, the jar relative to its directory: the application
+     * runs from that directory, and H2, appended after the jar, keeps the archive usable.
+     */
+    private Launch fastStartupCommand() {
+        File archive = new File(fastStartupDir, CDS_ARCHIVE);
+        File jar;
+        try (var files = Files.list(fastStartupDir.toPath())) {
+            jar = files.filter(path -> path.getFileName().toString().endsWith("-fast-startup.jar"))
+                    .map(Path::toFile)
+                    .findFirst()
+                    .orElse(null);
+        } catch (IOException e) {
+            jar = null;
+        }
+        if (jar == null || !archive.isFile()) {
+            throw new IllegalStateException("Missing fast-startup build in " + fastStartupDir.getAbsolutePath()
+                    + ", build it with mvn -pl api -Pfast-startup package");
+        }
+
+        return new Launch(List.of(
+                "-XX:SharedArchiveFile=" + CDS_ARCHIVE,
+                "-Xshare:on",
+                "-Dspring.aot.enabled=true",
+                "-cp", jar.getName() + File.pathSeparator + h2Jar,
+                MAIN_CLASS), fastStartupDir);
+    }
+
+    /**
+     * Launches the application and polls it until its first successful request. The application log is
+     * kept in target/startup-application.log, overwritten by every run.
+     *
+     * @return the time from the launch to the first successful request, in milliseconds
+     */
+    private double timeToFirstRequest(Launch launch, String[] appArgs) throws Exception {
+        int port = freePort();
+        int managementPort = freePort();
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(launch.arguments());
+        command.addAll(List.of(
+                "--spring.datasource.url=jdbc:h2:mem:startup;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                "--spring.datasource.driver-class-name=org.h2.Driver",
+                "--spring.datasource.username=sa",
+                "--spring.datasource.password=",
+                "--spring.jpa.database=H2",
+                "--spring.jpa.show-sql=false",
+                "--server.port=" + port,
+                "--management.server.port=" + managementPort,
+                "--jwt.keys.file=",
+                "--jwt.revocation.journal=",
+                "--logging.level.root=WARN"));
+        command.addAll(Arrays.asList(appArgs));
+
+        logFile.getParentFile().mkdirs();
+        HttpRequest health = HttpRequest.newBuilder(
+                        URI.create("http://localhost:" + managementPort + "/actuator/health"))
+                .timeout(Duration.ofSeconds(5))
+                .GET()
+                .build();
+
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command)
+                .directory(launch.directory())
+                .redirectErrorStream(true)
+                .redirectOutput(logFile)
+                .start();
+        try {
+            long deadline = start + timeout.toNanos();
+            while (System.nanoTime() < deadline) {
+                if (!process.isAlive()) {
+                    throw new IllegalStateException("The application exited with " + process.exitValue()
+                            + ", see " + logFile.getAbsolutePath());
+                }
+                try {
+                    if (httpClient.send(health, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                        return (System.nanoTime() - start) / 1e6;
+                    }
+                } catch (ConnectException e) {
+                    // Not listening yet
+                }
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            }
+            throw new IllegalStateException("No successful request after " + timeout + ", see "
+                    + logFile.getAbsolutePath());
+        } finally {
+            process.destroy();
+            if (!process.waitFor(30, TimeUnit.SECONDS)) {
+                process.destroyForcibly().waitFor();
+            }
+        }
+    }
+
+    /**
+     * JVM arguments and main class of a build, and the directory to run it from (null for the current one).
+     */
+    private record Launch(List<String> arguments, File directory) {
+    }
+
+    private static int freePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private Map<String, Object> report(Map<String, List<Double>> results) {
+        Map<String, Object> settings = new LinkedHashMap<>();
+        settings.put("runs", runs);
+        settings.put("jvm", System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+        settings.put("processors", Runtime.getRuntime().availableProcessors());
+
+        Map<String, Object> builds = new LinkedHashMap<>();
+        results.forEach((build, millis) -> {
+            List<Double> sorted = millis.stream().sorted().toList();
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("minMillis", round(sorted.get(0)));
+            result.put("medianMillis", round(sorted.get(sorted.size() / 2)));
+            result.put("maxMillis", round(sorted.get(sorted.size() - 1)));
+            result.put("runsMillis", millis.stream().map(StartupBenchmark::round).toList());
+            builds.put(build, result);
+        });
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("settings", settings);
+        report.put("builds", builds);
+        return report;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void print(Map<String, Object> report) {
+        System.out.printf("%n%-14s %10s %10s %10s%n", "Build", "min ms", "median ms", "max ms");
+        ((Map<String, Map<String, Object>>) report.get("builds")).forEach((build, result) ->
+                System.out.printf("%-14s %10s %10s %10s%n", build,
+                        result.get("minMillis"), result.get("medianMillis"), result.get("maxMillis")));
+    }
+
+    private void write(Map<String, Object> report) throws IOException {
+        File parent = resultFile.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(resultFile, report);
+        System.out.println("\nStartup benchmark result is saved to " + resultFile.getAbsolutePath());
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
@@ -0,0 +1,112 @@
+package com.mercadona.api.bench;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares platform and virtual threads for the blocking request model of the API.
+ * Every simulated request waits for a remote call (the network latency to the database or another
+ * service) and then runs a lookup by ID through a HikariCP pool on a local H2 database.
+ * The platform mode uses a fixed pool with Tomcat's default of 200 threads; the virtual mode
+ * runs one virtual thread per request, as with spring.threads.virtual.enabled=true.
+ * Score is the time needed to serve a burst of concurrent requests.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThreadModelBenchmark {
+
+    private static final int TOMCAT_MAX_THREADS = 200;
+    private static final int USERS = 10_000;
+
+    @Param({"platform", "virtual"})
+    public String threadModel;
+
+    @Param({"2000"})
+    public int concurrentRequests;
+
+    @Param({"5"})
+    public int remoteLatencyMillis;
+
+    private HikariDataSource dataSource;
+    private ExecutorService executor;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:threads;MODE=MySQL;DB_CLOSE_DELAY=-1");
+        config.setMaximumPoolSize(50);
+        dataSource = new HikariDataSource(config);
+
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS users (id_user BIGINT PRIMARY KEY, name VARCHAR(255), email VARCHAR(255))");
+            statement.execute("DELETE FROM users");
+            statement.execute("INSERT INTO users SELECT X, 'user' || X, 'user' || X || '@example.com' FROM SYSTEM_RANGE(1, " + USERS + ")");
+        }
+
+        executor = "virtual".equals(threadModel)
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(TOMCAT_MAX_THREADS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        dataSource.close();
+    }
+
+    @Benchmark
+    public long burstOfRequests() throws Exception {
+        List<Future<String>> responses = new ArrayList<>(concurrentRequests);
+        for (int i = 0; i < concurrentRequests; i++) {
+            responses.add(executor.submit(this::handleRequest));
+        }
+
+        long bytes = 0;
+        for (Future<String> response : responses) {
+            bytes += response.get().length();
+        }
+        return bytes;
+    }
+
+    private String handleRequest() throws Exception {
+        Thread.sleep(remoteLatencyMillis);
+
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement("SELECT name, email FROM users WHERE id_user = ?")) {
+            statement.setLong(1, ThreadLocalRandom.current().nextLong(1, USERS + 1));
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? resultSet.getString(1) + resultSet.getString(2) : "";
+            }
+        }
+    }
+}
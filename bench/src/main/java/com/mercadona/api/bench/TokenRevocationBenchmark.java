@@ -0,0 +1,74 @@
+package com.mercadona.api.bench;
+
+import com.mercadona.api.services.TokenRevocationList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the revocation check done by JwtFilter on every authenticated request, with the given number of
+ * revoked tokens. "miss" looks up tokens that were not revoked, the usual case; "hit" looks up revoked ones.
+ * Run with "-prof gc" to check that the lookup does not allocate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenRevocationBenchmark {
+
+    private static final int LOOKUP_MASK = (1 << 12) - 1;
+
+    @Param({"1000", "100000"})
+    public int revoked;
+
+    private TokenRevocationList revocations;
+    private long[] revokedIds;
+    private long[] otherIds;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        revocations = new TokenRevocationList(Duration.ofSeconds(1), Duration.ofMinutes(15), null);
+        SplittableRandom random = new SplittableRandom(42);
+        long expiresAt = System.currentTimeMillis() + Duration.ofHours(1).toMillis();
+
+        revokedIds = new long[LOOKUP_MASK + 1];
+        for (int i = 0; i < revoked; i++) {
+            long jti = random.nextLong();
+            revocations.revoke(jti, expiresAt);
+            revokedIds[i & LOOKUP_MASK] = jti;
+        }
+        otherIds = random.longs(LOOKUP_MASK + 1).toArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        revocations.destroy();
+    }
+
+    @Benchmark
+    public boolean miss() {
+        return revocations.isRevoked(otherIds[next++ & LOOKUP_MASK]);
+    }
+
+    @Benchmark
+    public boolean hit() {
+        return revocations.isRevoked(revokedIds[next++ & LOOKUP_MASK]);
+    }
+}
@@ -0,0 +1,101 @@
+package com.mercadona.api.bench;
+
+import com.mercadona.api.config.ExportConfig;
+import com.mercadona.api.config.SearchConfig;
+import com.mercadona.api.models.UserMatch;
+import com.mercadona.api.services.UserSearchIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a typeahead search of ten users, on a local H2 database in MySQL mode.
+ * "index" searches the in-memory n-gram index used by GET /users/search; "like" is the query it replaces,
+ * a LIKE '%q%' on name and email that scans the table. Queries go from a one-letter word prefix to
+ * a substring of every email. The index size is printed during setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserSearchBenchmark {
+
+    private static final int RESULTS = 10;
+
+    @Param({"100000"})
+    public int rows;
+
+    @Param({"m", "user 4242", "42@", "example"})
+    public String query;
+
+    @Param({"index", "like"})
+    public String search;
+
+    private SingleConnectionDataSource dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private UserSearchIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        dataSource = new SingleConnectionDataSource("jdbc:h2:mem:search" + rows + ";MODE=MySQL;DB_CLOSE_DELAY=-1", true);
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS users (id_user BIGINT PRIMARY KEY, name VARCHAR(255) NOT NULL, "
+                + "email VARCHAR(255) NOT NULL UNIQUE)");
+        jdbcTemplate.execute("DELETE FROM users");
+        // A few names with other words, so short queries do not all match the first users
+        jdbcTemplate.execute("INSERT INTO users SELECT X, CASEWHEN(MOD(X, 100) = 0, 'Maria User ' || X, 'User ' || X), "
+                + "'user' || X || '@example.com' FROM SYSTEM_RANGE(1, " + rows + ")");
+
+        SearchConfig searchConfig = new SearchConfig();
+        ReflectionTestUtils.setField(searchConfig, "enabled", true);
+        ReflectionTestUtils.setField(searchConfig, "maxUsers", 1_000_000L);
+        ReflectionTestUtils.setField(searchConfig, "maxCandidates", 500);
+        ReflectionTestUtils.setField(searchConfig, "rebuildRatio", 0.2);
+        // No periodic rebuild during a trial
+        ReflectionTestUtils.setField(searchConfig, "refreshInterval", Duration.ofDays(1));
+        ExportConfig exportConfig = new ExportConfig();
+        ReflectionTestUtils.setField(exportConfig, "fetchSize", 1000);
+
+        index = new UserSearchIndex(jdbcTemplate, searchConfig, exportConfig, new SimpleMeterRegistry());
+        index.onApplicationReady();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        index.destroy();
+        jdbcTemplate.execute("DROP TABLE users");
+        dataSource.destroy();
+    }
+
+    @Benchmark
+    public int search() {
+        if ("index".equals(search)) {
+            List<UserMatch> matches = index.search(query, RESULTS);
+            return matches.size();
+        }
+
+        String pattern = "%" + query + "%";
+        return jdbcTemplate.queryForList("SELECT id_user, name, email FROM users WHERE LOWER(name) LIKE ? "
+                + "OR LOWER(email) LIKE ? LIMIT " + RESULTS, pattern, pattern).size();
+    }
+}
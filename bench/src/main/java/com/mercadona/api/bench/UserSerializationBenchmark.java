@@ -0,0 +1,78 @@
+package com.mercadona.api.bench;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.mercadona.api.models.UserModel;
+import com.mercadona.api.models.UserView;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the JSON serialization of users with an object mapper configured like Spring Boot's,
+ * for a single user (GET /users/{id}) and for a default-sized page of users (GET /users).
+ * "entity" serializes the UserModel entity, including the password hash; "view" serializes the UserView
+ * projection returned by the API. The size of each response is printed during setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UserSerializationBenchmark {
+
+    private static final int PAGE_SIZE = 50;
+
+    @Param({"entity", "view"})
+    public String representation;
+
+    private ObjectWriter writer;
+    private Object user;
+    private List<?> page;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        writer = objectMapper.writer();
+
+        List<UserModel> entities = new ArrayList<>(PAGE_SIZE);
+        for (long i = 1; i <= PAGE_SIZE; i++) {
+            UserModel pageUser = new UserModel();
+            pageUser.setIdUser(i);
+            pageUser.setName("User " + i);
+            pageUser.setPassword("$2a$12$R9h/cIPz0gi.URNNX3kh2OPST9/PgBkqquzi.Ss7KIUgO2t0jWMUW");
+            pageUser.setEmail("user" + i + "@example.com");
+            entities.add(pageUser);
+        }
+        page = "view".equals(representation) ? entities.stream().map(UserView::from).toList() : entities;
+        user = page.get(0);
+
+        System.out.printf("%n%s: %d bytes per user, %d bytes per page%n", representation,
+                writer.writeValueAsBytes(user).length, writer.writeValueAsBytes(page).length);
+    }
+
+    @Benchmark
+    public byte[] serializeUser() throws JsonProcessingException {
+        return writer.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public byte[] serializePage() throws JsonProcessingException {
+        return writer.writeValueAsBytes(page);
+    }
+}